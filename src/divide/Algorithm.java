@@ -1,11 +1,13 @@
 package divide;
 
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
 
 public class Algorithm
@@ -16,12 +18,34 @@ public class Algorithm
 	 * @param <R>
 	 *            range type
 	 */
-	static abstract class ProblemGraph< V, R >
+	public static abstract class ProblemGraph< V, R >
 	{
 		public abstract Set< V > allVariables();
 
 		public abstract Map< V, R > solve( final Set< V > region );
 
+		/**
+		 * Solve {@code region} given the current global labeling, e.g., to
+		 * condition the region on the labels around it. The default ignores
+		 * {@code labeling}.
+		 */
+		public Map< V, R > solve( final Set< V > region, final Map< V, R > labeling )
+		{
+			return solve( region );
+		}
+
+		/**
+		 * Solve {@code region} given the current global labeling and the
+		 * labels {@code certified} by {@link #certify()} at the start of the
+		 * computation. Certified labels are optimal, so a problem may
+		 * condition the region on them. The default ignores
+		 * {@code certified}.
+		 */
+		public Map< V, R > solve( final Set< V > region, final Map< V, R > labeling, final Map< V, R > certified )
+		{
+			return solve( region, labeling );
+		}
+
 		public abstract Set< V > gamma( final Set< V > region );
 
 		Set< V > gamma( final int n, final Set< V > region )
@@ -34,6 +58,56 @@ public class Algorithm
 				return gamma( n - 1, gamma( region ) );
 		}
 
+		/**
+		 * Compute labels of variables that are provably optimal, e.g., by a
+		 * persistency test. {@link Algorithm#solve} fixes the certified
+		 * variables to these labels, never solves them and passes them to
+		 * {@link #solve(Set, Map, Map)}. The default certifies nothing.
+		 */
+		public Map< V, R > certify()
+		{
+			return Collections.emptyMap();
+		}
+
+		/**
+		 * A labeling that is cheap to compute, e.g., ignoring the pairwise
+		 * terms. Intermediate labelings of a {@link Solver} take the labels
+		 * of variables that are not solved yet from it. The default labels
+		 * nothing.
+		 */
+		public Map< V, R > quickLabeling()
+		{
+			return Collections.emptyMap();
+		}
+
+		/**
+		 * Create the queue of conflicts of a {@link Solver}, for all
+		 * variables. Override to process the conflicts in an order that suits
+		 * the problem, e.g., spatially coherent.
+		 */
+		public Queue< V > createConflictQueue()
+		{
+			return new ArrayDeque< V >();
+		}
+
+		/**
+		 * Create the store for the global labeling. Override to provide a
+		 * more compact store for the variables of the problem.
+		 */
+		public LabelStore< V, R > createLabelStore()
+		{
+			return new HashLabelStore< V, R >();
+		}
+
+		/**
+		 * Create the map for the kappas of all variables. Override to provide
+		 * a more compact map for the variables of the problem.
+		 */
+		public Map< V, Integer > createKappaMap()
+		{
+			return new HashMap< V, Integer >();
+		}
+
 		Map< V, R > restrict( final Map< V, R > assignment, final Set< V > region )
 		{
 			final HashMap< V, R > restriction = new HashMap< V, R >();
@@ -49,63 +123,123 @@ public class Algorithm
 		public int next( int kappa );
 	}
 
+	/**
+	 * Receives a snapshot of the solver state every {@link #interval()}
+	 * iterations, e.g., to write a checkpoint from which the computation can
+	 * be resumed.
+	 *
+	 * @param <V>
+	 *            variable type
+	 * @param <R>
+	 *            range type
+	 */
+	public interface Checkpointer< V, R >
+	{
+		/**
+		 * @return number of iterations (local solves of a conflict or a batch
+		 *         of conflicts) between checkpoints, must be positive.
+		 */
+		public int interval();
+
+		public void checkpoint( Collection< V > conflicts, Map< V, Integer > kappas, Map< V, R > labeling );
+	}
+
+	/**
+	 * Remaining conflicts and final kappas of the last static
+	 * {@link #solve} call. Not meaningful if several computations run at the
+	 * same time, use {@link Solver.Result} instead.
+	 */
 	public static Deque< ? > conflictsRemaining;
 	public static Map< ?, Integer > kappasFinal;
 
 	public static < V, R > Map< V, R > solve( final ProblemGraph< V, R > problem, final int kappaStart, final KappaUpdateFunction u )
 	{
-		final Set< V > variables = problem.allVariables();
-		final Deque< V > conflicts = new ArrayDeque< V >( variables );
-		final Map< V, Integer > kappas = new HashMap< V, Integer >();
-		for ( final V v : variables )
-			kappas.put( v, kappaStart );
-		final Map< V, Map< V, R > > solutions = new HashMap< V, Map< V, R > >();
-
-		while ( !conflicts.isEmpty() )
-		{
-			final V v = conflicts.removeFirst();
-
-			final Set< V > gammaV = problem.gamma( Collections.singleton( v ) );
-
-			// check whether the conflict still persists
-			boolean hasConflict = false;
-			for ( final V vprime : gammaV )
-				if ( vprime.equals( v ) )
-					continue;
-				else if ( !areConsistent( solutions.get( v ), solutions.get( vprime ) ) )
-				{
-					hasConflict = true;
-					break;
-				}
-			if ( !hasConflict )
-				continue;
-
-			final int kappa = kappas.get( v );
-
-			final Map< V, R > sigma = problem.restrict( problem.solve( problem.gamma( kappa, gammaV ) ), gammaV );
-
-			solutions.put( v, sigma );
-
-			for ( final V vprime : gammaV )
-				if ( vprime.equals( v ) )
-					continue;
-				else if ( !areConsistent( sigma, solutions.get( vprime ) ) )
-				{
-					conflicts.add( vprime );
-//					kappas.put( vprime, Math.max( kappa, kappas.get( vprime ) ) );
-				}
-			kappas.put( v, u.next( kappa ) );
-		}
+		return solve( problem, kappaStart, u, Collections.< V, R >emptyMap(), problem.allVariables() );
+	}
 
-		final Map< V, R > globalSolution = new HashMap< V, R >();
-		for ( final Map< V, R > s : solutions.values() )
-			for ( final Entry< V, R > entry : s.entrySet() )
-				globalSolution.put( entry.getKey(), entry.getValue() );
+	/**
+	 * Solve starting from an initial global labeling, e.g., the solution of
+	 * the previous frame of a time-lapse.
+	 *
+	 * Every variable that is not in {@code initialConflicts} starts out with
+	 * the restriction of {@code initialSolution} to its neighborhood as its
+	 * local solution. Only the variables in {@code initialConflicts} are
+	 * solved initially, all others are revisited only if a neighboring local
+	 * solution conflicts with them.
+	 *
+	 * @param initialSolution
+	 *            initial global labeling (may be partial).
+	 * @param initialConflicts
+	 *            variables that have to be solved.
+	 */
+	public static < V, R > Map< V, R > solve( final ProblemGraph< V, R > problem, final int kappaStart, final KappaUpdateFunction u, final Map< V, R > initialSolution, final Collection< V > initialConflicts )
+	{
+		return solve( problem, kappaStart, u, initialSolution, initialConflicts, Collections.< V, Integer >emptyMap(), null );
+	}
+
+	/**
+	 * Solve from scratch, handing the solver state to {@code checkpointer}
+	 * periodically.
+	 */
+	public static < V, R > Map< V, R > solve( final ProblemGraph< V, R > problem, final int kappaStart, final KappaUpdateFunction u, final Checkpointer< V, R > checkpointer )
+	{
+		return solve( problem, kappaStart, u, Collections.< V, R >emptyMap(), problem.allVariables(), Collections.< V, Integer >emptyMap(), checkpointer );
+	}
+
+	/**
+	 * Solve from scratch, solving up to {@code batchSize} conflicts with a
+	 * single call to {@link ProblemGraph#solve(Set, Map)}.
+	 *
+	 * The conflicts of a batch are taken from the queue one after another
+	 * and the union of their regions is solved at once. Each variable of the
+	 * batch then commits the restriction of this solution to its
+	 * neighborhood. This spreads the fixed cost of a local solve over many
+	 * variables, and pays off if consecutive conflicts are close to each
+	 * other (see {@link ProblemGraph#createConflictQueue()}).
+	 *
+	 * The local solutions of a batch agree with each other by construction,
+	 * so fewer conflicts arise and kappas grow less than when solving one
+	 * conflict at a time. The labeling may therefore differ in a few
+	 * variables from the one obtained with {@code batchSize = 1}.
+	 */
+	public static < V, R > Map< V, R > solve( final ProblemGraph< V, R > problem, final int kappaStart, final KappaUpdateFunction u, final int batchSize )
+	{
+		return solve( problem, kappaStart, u, Collections.< V, R >emptyMap(), problem.allVariables(), Collections.< V, Integer >emptyMap(), null, batchSize );
+	}
+
+	/**
+	 * Solve starting from an initial global labeling, initial conflicts and
+	 * initial kappas, e.g., the state stored in a checkpoint.
+	 *
+	 * @param initialKappas
+	 *            initial kappa for each variable. Variables that are missing
+	 *            start at {@code kappaStart}.
+	 * @param checkpointer
+	 *            receives the solver state periodically, may be {@code null}.
+	 */
+	public static < V, R > Map< V, R > solve( final ProblemGraph< V, R > problem, final int kappaStart, final KappaUpdateFunction u, final Map< V, R > initialSolution, final Collection< V > initialConflicts, final Map< V, Integer > initialKappas, final Checkpointer< V, R > checkpointer )
+	{
+		return solve( problem, kappaStart, u, initialSolution, initialConflicts, initialKappas, checkpointer, 1 );
+	}
+
+	/**
+	 * @param checkpointer
+	 *            receives the solver state periodically, may be {@code null}.
+	 *            Checkpoints are taken between batches.
+	 * @param batchSize
+	 *            maximum number of conflicts that are solved together.
+	 */
+	public static < V, R > Map< V, R > solve( final ProblemGraph< V, R > problem, final int kappaStart, final KappaUpdateFunction u, final Map< V, R > initialSolution, final Collection< V > initialConflicts, final Map< V, Integer > initialKappas, final Checkpointer< V, R > checkpointer, final int batchSize )
+	{
+		final Solver< V, R > solver = new Solver< V, R >( problem, kappaStart, u );
+		solver.setCheckpointer( checkpointer );
+		solver.setBatchSize( batchSize );
+		final Solver.Result< V, R > result = solver.solve( initialSolution, initialConflicts, initialKappas );
 
-		conflictsRemaining = conflicts;
-		kappasFinal = kappas;
+		conflictsRemaining = new ArrayDeque< V >( result.getRemainingConflicts() );
+		kappasFinal = result.getKappas();
 
-		return globalSolution;
+		return result.getLabeling();
 	}
 
 	public static < V, R > boolean areConsistent( final Map< V, R > assignment, final Map< V, R > otherAssignment )
@@ -1,7 +1,8 @@
 package divide;
 
-import graphcut.GraphCut;
 import graphcut.GraphCut.Terminal;
+import graphcut.MaxFlow;
+import graphcut.MaxFlowBackend;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -23,7 +24,99 @@ public class BinaryRestoration
 {
 	static final float pottsWeight = 1;
 
+	// the unary terms are 0 or 1, so only the Potts weight can be fractional
+	static final boolean integerCapacities = pottsWeight == ( int ) pottsWeight;
+
+	/**
+	 * How a region is coupled to the labels of the variables around it.
+	 *
+	 * With {@link #SOFT} or {@link #HARD}, local solutions agree with their
+	 * surroundings more often, so {@link Algorithm#solve} needs fewer solves.
+	 * However, it may then settle on a labeling that is optimal for every
+	 * region given its boundary, but not globally optimal.
+	 */
+	public static enum BoundaryCondition
+	{
+		/**
+		 * The region is cut on its own.
+		 */
+		FREE( 0 ),
+
+		/**
+		 * The region is coupled to the labels around it with half the Potts
+		 * weight.
+		 */
+		SOFT( pottsWeight / 2 ),
+
+		/**
+		 * The labels around the region are fixed, i.e., the region is solved
+		 * exactly conditioned on them.
+		 */
+		HARD( pottsWeight );
+
+		final float weight;
+
+		private BoundaryCondition( final float weight )
+		{
+			this.weight = weight;
+		}
+	}
+
 	public static Map< Integer, Integer > binaryRestoration( final RandomAccessibleInterval< UnsignedByteType > img, final Set< Integer > region )
+	{
+		return binaryRestoration( img, region, MaxFlowBackend.AUTO );
+	}
+
+	public static Map< Integer, Integer > binaryRestoration( final RandomAccessibleInterval< UnsignedByteType > img, final Set< Integer > region, final MaxFlowBackend backend )
+	{
+		return cut( img, region, null, 0, 0, backend );
+	}
+
+	public static Map< Integer, Integer > binaryRestoration( final RandomAccessibleInterval< UnsignedByteType > img, final Set< Integer > region, final Map< Integer, Integer > boundaryLabels, final BoundaryCondition boundary )
+	{
+		return binaryRestoration( img, region, boundaryLabels, boundary, MaxFlowBackend.AUTO, null );
+	}
+
+	/**
+	 * Restore {@code region}, coupled to the labels of the variables around
+	 * it as given by {@code boundary}.
+	 *
+	 * If {@code persistent} is not {@code null}, the region is additionally
+	 * solved with all variables around it fixed to 0 and to 1. By
+	 * monotonicity of the cut, the variables that get the same label in both
+	 * cases get this label in the global solution, whatever the labels outside
+	 * of the region are. These variables are added to {@code persistent}.
+	 *
+	 * @param boundaryLabels
+	 *            labels of the variables around the region, unlabeled
+	 *            variables are ignored.
+	 * @param persistent
+	 *            receives the provably optimal variables of the region, may
+	 *            be {@code null}.
+	 */
+	public static Map< Integer, Integer > binaryRestoration( final RandomAccessibleInterval< UnsignedByteType > img, final Set< Integer > region, final Map< Integer, Integer > boundaryLabels, final BoundaryCondition boundary, final MaxFlowBackend backend, final Set< Integer > persistent )
+	{
+		final Map< Integer, Integer > solution = cut( img, region, boundaryLabels, 0, boundary.weight, backend );
+
+		if ( persistent != null )
+		{
+			final Map< Integer, Integer > lower = cut( img, region, null, 0, pottsWeight, backend );
+			final Map< Integer, Integer > upper = cut( img, region, null, 1, pottsWeight, backend );
+			for ( final int variable : region )
+				if ( lower.get( variable ).equals( upper.get( variable ) ) )
+					persistent.add( variable );
+		}
+
+		return solution;
+	}
+
+	/**
+	 * Cut {@code region}, coupling it with weight {@code boundaryWeight} to
+	 * the labels of the variables just outside. These are taken from
+	 * {@code boundaryLabels} if it is not {@code null} (unlabeled variables
+	 * are left free), and are {@code boundaryLabel} otherwise.
+	 */
+	private static Map< Integer, Integer > cut( final RandomAccessibleInterval< UnsignedByteType > img, final Set< Integer > region, final Map< Integer, Integer > boundaryLabels, final int boundaryLabel, final float boundaryWeight, final MaxFlowBackend backend )
 	{
 		final int n = img.numDimensions();
 		final long[] dimensions = new long[ n ];
@@ -32,20 +125,31 @@ public class BinaryRestoration
 		final long numNodes = region.size();
 		final long numEdges = n * numNodes;
 
-		final GraphCut graphCut = new GraphCut( ( int ) numNodes, ( int ) numEdges );
+		final boolean integral = integerCapacities && boundaryWeight == ( int ) boundaryWeight;
+		final MaxFlow graphCut = backend.create( ( int ) numNodes, ( int ) numEdges, integral );
 
-		final HashMap< Integer, Integer > variableToGraphCutNode = new HashMap< Integer, Integer >();
+		// number the nodes in the order of the variables, so that the graph
+		// and thus the (floating point) flow computation do not depend on the
+		// iteration order of region
+		final int[] variables = new int[ region.size() ];
 		int j = 0;
 		for ( final int variable : region )
-			variableToGraphCutNode.put( variable, j++ );
+			variables[ j++ ] = variable;
+		Arrays.sort( variables );
+		final HashMap< Integer, Integer > variableToGraphCutNode = new HashMap< Integer, Integer >();
+		for ( j = 0; j < variables.length; ++j )
+			variableToGraphCutNode.put( variables[ j ], j );
 
-		// set terminal weights
+		// set terminal weights, variable 0 is the minimum of img
 		final RandomAccess< UnsignedByteType > a = img.randomAccess();
+		final long[] min = new long[ n ];
+		img.min( min );
 		final long[] position = new long[ n ];
-		for ( final int variable : region )
+		for ( final int variable : variables )
 		{
 			IntervalIndexer.indexToPosition( variable, dimensions, position );
-			a.setPosition( position );
+			for ( int d = 0; d < n; ++d )
+				a.setPosition( min[ d ] + position[ d ], d );
 			final int Ipo = ( a.get().get() <= 0 ) ? 0 : 1;
 			final float source = 1 - Ipo;
 			final float sink = Ipo;
@@ -53,6 +157,49 @@ public class BinaryRestoration
 			graphCut.setTerminalWeights( nodeNum, source, sink );
 		}
 
+		// couple to the boundary: a neighbor outside the region with label 0
+		// penalizes label 1 and vice versa
+		if ( boundaryWeight > 0 )
+		{
+			final int[][] boundaryOffsets = new int[ 2 * n ][ n ];
+			for ( int d = 0; d < n; d++ )
+			{
+				boundaryOffsets[ 2 * d ][ d ] = 1;
+				boundaryOffsets[ 2 * d + 1 ][ d ] = -1;
+			}
+			for ( final int variable : variables )
+			{
+				float source = 0;
+				float sink = 0;
+	B:			for ( int i = 0; i < boundaryOffsets.length; ++i )
+				{
+					IntervalIndexer.indexToPosition( variable, dimensions, position );
+					for ( int d = 0; d < n; ++d )
+					{
+						position[ d ] += boundaryOffsets[ i ][ d ];
+						if ( position[ d ] < 0 || position[ d ] >= dimensions[ d ] )
+							continue B;
+					}
+					final Integer neighborVariable = Integer.valueOf( ( int ) IntervalIndexer.positionToIndex( position, dimensions ) );
+					if ( region.contains( neighborVariable ) )
+						continue;
+					final Integer label;
+					if ( boundaryLabels == null )
+						label = boundaryLabel;
+					else
+						label = boundaryLabels.get( neighborVariable );
+					if ( label == null )
+						continue;
+					else if ( label == 0 )
+						source += boundaryWeight;
+					else
+						sink += boundaryWeight;
+				}
+				if ( source > 0 || sink > 0 )
+					graphCut.setTerminalWeights( variableToGraphCutNode.get( variable ), source, sink );
+			}
+		}
+
 		// set edge weights
 		final int[][] neighborOffsets;
 		neighborOffsets = new int[ n ][ n ];
@@ -62,7 +209,7 @@ public class BinaryRestoration
 			neighborOffsets[ d ][ d ] = 1;
 		}
 		final int numNeighbors = neighborOffsets.length;
-		for ( final int variable : region )
+		for ( final int variable : variables )
 		{
 			A: for ( int i = 0; i < numNeighbors; ++i )
 			{
@@ -87,7 +234,7 @@ public class BinaryRestoration
 
 		// create solution
 		final Map< Integer, Integer > solution = new HashMap< Integer, Integer >();
-		for ( final int variable : region )
+		for ( final int variable : variables )
 		{
 			final int nodeNum = variableToGraphCutNode.get( variable );
 			if ( graphCut.getTerminal( nodeNum ) == Terminal.FOREGROUND )
@@ -100,34 +247,76 @@ public class BinaryRestoration
 	}
 
 	public static final Img< UnsignedByteType > binaryRestoration( final RandomAccessibleInterval< UnsignedByteType > img )
+	{
+		return binaryRestoration( img, MaxFlowBackend.AUTO );
+	}
+
+	public static final Img< UnsignedByteType > binaryRestoration( final RandomAccessibleInterval< UnsignedByteType > img, final MaxFlowBackend backend )
+	{
+		final MaxFlow graphCut = createGraph( img, backend );
+		graphCut.computeMaximumFlow( false, null );
+		return segmentation( img, graphCut );
+	}
+
+	/**
+	 * Create the graph of the restoration of the whole image, whose node
+	 * numbers are the pixel indices.
+	 */
+	static MaxFlow createGraph( final RandomAccessibleInterval< UnsignedByteType > img, final MaxFlowBackend backend )
 	{
 		final int n = img.numDimensions();
 		final long[] dimensions = new long[ n ];
 		img.dimensions( dimensions );
 
 		final long numNodes = Intervals.numElements( img );
+		final long numEdges = numEdges( dimensions );
 
-		// (four-connected)
-		long numEdges = 0;
-		for ( int d = 0; d < n; d++ )
-			numEdges += numNodes - numNodes / dimensions[ d ];
-
-		final GraphCut graphCut = new GraphCut( ( int ) numNodes, ( int ) numEdges + 1000 );
+		final MaxFlow graphCut = backend.create( ( int ) numNodes, ( int ) numEdges + 1000, integerCapacities );
 
-		// set terminal weights
+		// set terminal weights, stepping the access in index order
 		final RandomAccess< UnsignedByteType > a = img.randomAccess();
+		final long[] min = new long[ n ];
+		img.min( min );
 		final long[] position = new long[ n ];
+		a.setPosition( min );
 		for ( long nodeNum = 0; nodeNum < numNodes; ++nodeNum )
 		{
-			IntervalIndexer.indexToPosition( nodeNum, dimensions, position );
-			a.setPosition( position );
 			final int Ipo = ( a.get().get() <= 0 ) ? 0 : 1;
 			final float source = 1 - Ipo;
 			final float sink = Ipo;
 			graphCut.setTerminalWeights( ( int ) nodeNum, source, sink );
+			fwdIndex( a, position, min, dimensions );
 		}
 
-		// set edge weights
+		setEdgeWeights( graphCut, dimensions );
+
+		return graphCut;
+	}
+
+	/**
+	 * @return number of edges of the (four-connected) grid graph of an image
+	 *         with the given dimensions.
+	 */
+	static long numEdges( final long[] dimensions )
+	{
+		final long numNodes = Intervals.numElements( dimensions );
+		long numEdges = 0;
+		for ( int d = 0; d < dimensions.length; d++ )
+			numEdges += numNodes - numNodes / dimensions[ d ];
+		return numEdges;
+	}
+
+	/**
+	 * Connect each node of a graph whose node numbers are the pixel indices
+	 * of an image with the given dimensions to its neighbors by edges of
+	 * weight {@link #pottsWeight}.
+	 */
+	static void setEdgeWeights( final MaxFlow graphCut, final long[] dimensions )
+	{
+		final int n = dimensions.length;
+		final long numNodes = Intervals.numElements( dimensions );
+		final long[] position = new long[ n ];
+
 		final int[][] neighborOffsets;
 		neighborOffsets = new int[ n ][ n ];
 		for ( int d = 0; d < n; d++ )
@@ -151,25 +340,83 @@ public class BinaryRestoration
 				graphCut.setEdgeWeight( ( int ) nodeNum, ( int ) neighborNum, pottsWeight );
 			}
 		}
+	}
 
-		graphCut.computeMaximumFlow( false, null );
-
-		// create segmentation image
+	/**
+	 * Create the segmentation image from a graph created by
+	 * {@link #createGraph} whose maximum flow has been computed.
+	 */
+	static Img< UnsignedByteType > segmentation( final RandomAccessibleInterval< UnsignedByteType > img, final MaxFlow graphCut )
+	{
 		final UnsignedByteType type = new UnsignedByteType();
 		final ArrayImgFactory< UnsignedByteType > factory = new ArrayImgFactory< UnsignedByteType >();
 		final Img< UnsignedByteType > restored = factory.create( img, type );
+		writeSegmentation( graphCut, restored );
+		return restored;
+	}
 
-		final RandomAccess< UnsignedByteType > access = restored.randomAccess();
+	/**
+	 * Write the segmentation of a graph created by {@link #createGraph} whose
+	 * maximum flow has been computed into {@code target}: 0 for
+	 * {@link Terminal#FOREGROUND}, 255 otherwise. Node 0 is written to the
+	 * minimum of {@code target}.
+	 */
+	static void writeSegmentation( final MaxFlow graphCut, final RandomAccessibleInterval< UnsignedByteType > target )
+	{
+		final int n = target.numDimensions();
+		final long[] dimensions = new long[ n ];
+		target.dimensions( dimensions );
+		final long numNodes = Intervals.numElements( target );
+
+		final RandomAccess< UnsignedByteType > access = target.randomAccess();
+		final long[] min = new long[ n ];
+		target.min( min );
+		final long[] position = new long[ n ];
+		access.setPosition( min );
 		for ( long nodeNum = 0; nodeNum < numNodes; ++nodeNum )
 		{
-			IntervalIndexer.indexToPosition( nodeNum, dimensions, position );
-			access.setPosition( position );
 			if ( graphCut.getTerminal( ( int ) nodeNum ) == Terminal.FOREGROUND )
 				access.get().set( 0 );
 			else
 				access.get().set( 255 );
+			fwdIndex( access, position, min, dimensions );
 		}
-		return restored;
+	}
+
+	/**
+	 * Move {@code access} to the pixel with the next index, i.e., the next
+	 * position in flat iteration order. Cheaper than computing the position
+	 * from the index.
+	 *
+	 * @param position
+	 *            current position of {@code access} relative to {@code min},
+	 *            i.e., the position of the index, is updated.
+	 * @param min
+	 *            minimum of the interval {@code access} iterates.
+	 */
+	static void fwdIndex( final RandomAccess< ? > access, final long[] position, final long[] min, final long[] dimensions )
+	{
+		for ( int d = 0; d < position.length; ++d )
+		{
+			if ( ++position[ d ] < dimensions[ d ] )
+			{
+				access.fwd( d );
+				return;
+			}
+			position[ d ] = 0;
+			access.setPosition( min[ d ], d );
+		}
+	}
+
+	/**
+	 * Restore {@code img} into {@code target}, which must have the same
+	 * dimensions, without allocating an image.
+	 */
+	public static final void binaryRestoration( final RandomAccessibleInterval< UnsignedByteType > img, final RandomAccessibleInterval< UnsignedByteType > target, final MaxFlowBackend backend )
+	{
+		final MaxFlow graphCut = createGraph( img, backend );
+		graphCut.computeMaximumFlow( false, null );
+		writeSegmentation( graphCut, target );
 	}
 
 	public static void main( final String[] args ) throws ImgIOException
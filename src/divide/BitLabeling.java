@@ -0,0 +1,234 @@
+package divide;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Binary labeling of the variables <em>0,...,numVariables-1</em> packed into
+ * two bit sets, which labels are set and the labels themselves. Takes two bits
+ * per variable instead of a map entry with boxed variable and label.
+ */
+public class BitLabeling extends AbstractMap< Integer, Integer >
+{
+	private final int numVariables;
+
+	private final long[] labeled;
+
+	private final long[] labels;
+
+	private int size = 0;
+
+	public BitLabeling( final int numVariables )
+	{
+		this( numVariables, new long[ numWords( numVariables ) ], new long[ numWords( numVariables ) ] );
+	}
+
+	/**
+	 * Wrap bit sets as written by {@link #getLabeledWords()} and
+	 * {@link #getLabelWords()}.
+	 */
+	BitLabeling( final int numVariables, final long[] labeled, final long[] labels )
+	{
+		this.numVariables = numVariables;
+		this.labeled = labeled;
+		this.labels = labels;
+		for ( final long word : labeled )
+			size += Long.bitCount( word );
+	}
+
+	/**
+	 * @return copy of {@code labeling}, whose labels must be 0 or 1.
+	 */
+	public static BitLabeling copyOf( final Map< Integer, Integer > labeling, final int numVariables )
+	{
+		final BitLabeling copy = new BitLabeling( numVariables );
+		for ( final Map.Entry< Integer, Integer > entry : labeling.entrySet() )
+			copy.set( entry.getKey(), entry.getValue() );
+		return copy;
+	}
+
+	static int numWords( final int numVariables )
+	{
+		return ( numVariables + 63 ) / 64;
+	}
+
+	public int numVariables()
+	{
+		return numVariables;
+	}
+
+	public boolean isLabeled( final int v )
+	{
+		return ( labeled[ v >>> 6 ] & ( 1L << v ) ) != 0;
+	}
+
+	/**
+	 * @return the label of {@code v}, 0 if {@code v} is not labeled.
+	 */
+	public int getLabel( final int v )
+	{
+		return ( labels[ v >>> 6 ] & ( 1L << v ) ) != 0 ? 1 : 0;
+	}
+
+	public void set( final int v, final int label )
+	{
+		if ( label != 0 && label != 1 )
+			throw new IllegalArgumentException( "only binary labels can be stored, got " + label );
+		if ( !isLabeled( v ) )
+		{
+			labeled[ v >>> 6 ] |= 1L << v;
+			++size;
+		}
+		if ( label == 1 )
+			labels[ v >>> 6 ] |= 1L << v;
+		else
+			labels[ v >>> 6 ] &= ~( 1L << v );
+	}
+
+	public void unset( final int v )
+	{
+		if ( isLabeled( v ) )
+		{
+			labeled[ v >>> 6 ] &= ~( 1L << v );
+			labels[ v >>> 6 ] &= ~( 1L << v );
+			--size;
+		}
+	}
+
+	/**
+	 * @return bit set of the labeled variables, not a copy.
+	 */
+	long[] getLabeledWords()
+	{
+		return labeled;
+	}
+
+	/**
+	 * @return bit set of the variables labeled 1, not a copy.
+	 */
+	long[] getLabelWords()
+	{
+		return labels;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public Integer get( final Object key )
+	{
+		if ( !( key instanceof Integer ) )
+			return null;
+		final int v = ( Integer ) key;
+		return v >= 0 && v < numVariables && isLabeled( v ) ? getLabel( v ) : null;
+	}
+
+	@Override
+	public boolean containsKey( final Object key )
+	{
+		return get( key ) != null;
+	}
+
+	@Override
+	public Integer put( final Integer key, final Integer value )
+	{
+		final Integer previous = get( key );
+		set( key, value );
+		return previous;
+	}
+
+	@Override
+	public Integer remove( final Object key )
+	{
+		final Integer previous = get( key );
+		if ( previous != null )
+			unset( ( Integer ) key );
+		return previous;
+	}
+
+	@Override
+	public void clear()
+	{
+		for ( int i = 0; i < labeled.length; ++i )
+		{
+			labeled[ i ] = 0;
+			labels[ i ] = 0;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Iterates over the labeled variables in increasing order, skipping 64
+	 * unlabeled variables at a time.
+	 */
+	@Override
+	public Set< Map.Entry< Integer, Integer > > entrySet()
+	{
+		return new AbstractSet< Map.Entry< Integer, Integer > >()
+		{
+			@Override
+			public int size()
+			{
+				return size;
+			}
+
+			@Override
+			public Iterator< Map.Entry< Integer, Integer > > iterator()
+			{
+				return new Iterator< Map.Entry< Integer, Integer > >()
+				{
+					int next = advance( 0 );
+
+					int last = -1;
+
+					int advance( final int v )
+					{
+						int word = v >>> 6;
+						if ( word >= labeled.length )
+							return numVariables;
+						long bits = labeled[ word ] & ( -1L << v );
+						while ( bits == 0 )
+						{
+							if ( ++word == labeled.length )
+								return numVariables;
+							bits = labeled[ word ];
+						}
+						return word * 64 + Long.numberOfTrailingZeros( bits );
+					}
+
+					@Override
+					public boolean hasNext()
+					{
+						return next < numVariables;
+					}
+
+					@Override
+					public Map.Entry< Integer, Integer > next()
+					{
+						if ( !hasNext() )
+							throw new NoSuchElementException();
+						last = next;
+						next = advance( last + 1 );
+						return new SimpleImmutableEntry< Integer, Integer >( last, getLabel( last ) );
+					}
+
+					@Override
+					public void remove()
+					{
+						if ( last < 0 )
+							throw new IllegalStateException();
+						unset( last );
+						last = -1;
+					}
+				};
+			}
+		};
+	}
+}
@@ -0,0 +1,132 @@
+package divide;
+
+import graphcut.IntList;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Queue of conflicts for problems whose variables are the indices
+ * <em>0,...,numVariables-1</em>, that hands out conflicts block by block.
+ *
+ * Conflicts are collected per block of a {@link DistributedSolver.Partition}.
+ * All conflicts of a block are handed out (last in, first out) before the
+ * queue moves on to the next block with conflicts, sweeping over the blocks in
+ * order. Consecutive local solves thus touch neighboring parts of the problem.
+ * A variable is in the queue at most once, adding it again has no effect.
+ */
+public class BlockConflictQueue extends AbstractQueue< Integer >
+{
+	private final int[] blockOfVariable;
+
+	private final IntList[] blocks;
+
+	private final boolean[] queued;
+
+	// the block that conflicts are currently taken from
+	private int currentBlock = 0;
+
+	private int size = 0;
+
+	public BlockConflictQueue( final DistributedSolver.Partition< Integer > partition, final int numVariables )
+	{
+		blockOfVariable = new int[ numVariables ];
+		for ( int v = 0; v < numVariables; ++v )
+			blockOfVariable[ v ] = partition.blockOf( v );
+		blocks = new IntList[ partition.numBlocks() ];
+		for ( int b = 0; b < blocks.length; ++b )
+			blocks[ b ] = new IntList();
+		queued = new boolean[ numVariables ];
+	}
+
+	@Override
+	public boolean offer( final Integer v )
+	{
+		if ( !queued[ v ] )
+		{
+			queued[ v ] = true;
+			blocks[ blockOfVariable[ v ] ].add( v );
+			++size;
+		}
+		return true;
+	}
+
+	@Override
+	public Integer poll()
+	{
+		if ( size == 0 )
+			return null;
+		final IntList block = blocks[ nextBlock() ];
+		final int v = block.removeLast();
+		queued[ v ] = false;
+		--size;
+		return v;
+	}
+
+	@Override
+	public Integer peek()
+	{
+		if ( size == 0 )
+			return null;
+		final IntList block = blocks[ nextBlock() ];
+		return block.get( block.size() - 1 );
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Iterates over the conflicts in no particular order. Removal is not
+	 * supported.
+	 */
+	@Override
+	public Iterator< Integer > iterator()
+	{
+		return new Iterator< Integer >()
+		{
+			private int block = 0;
+
+			private int index = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				while ( block < blocks.length && index >= blocks[ block ].size() )
+				{
+					++block;
+					index = 0;
+				}
+				return block < blocks.length;
+			}
+
+			@Override
+			public Integer next()
+			{
+				if ( !hasNext() )
+					throw new NoSuchElementException();
+				return blocks[ block ].get( index++ );
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * @return the current block if it has conflicts, otherwise the next block
+	 *         with conflicts. Must only be called if the queue is not empty.
+	 */
+	private int nextBlock()
+	{
+		while ( blocks[ currentBlock ].isEmpty() )
+			currentBlock = ( currentBlock + 1 ) % blocks.length;
+		return currentBlock;
+	}
+}
@@ -0,0 +1,350 @@
+package divide;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Divide-and-conquer with the variables partitioned into blocks. Each block is
+ * owned by a {@link Worker} that keeps the conflicts, kappas and labels of its
+ * block (plus the labels of the boundary it shares with other blocks) and
+ * solves its conflicts with {@link Algorithm.ProblemGraph#solve} locally.
+ *
+ * The computation proceeds in rounds. In each round every worker works off its
+ * conflict queue. Committed local solutions that reach into other blocks are
+ * sent to the owners of those blocks through a {@link Coordinator}. Between
+ * rounds, the coordinator delivers the messages, and the receiving workers
+ * commit the remote solutions to their labels and enqueue the variables whose
+ * local solutions are no longer consistent. The computation ends when no
+ * worker has conflicts left and no messages are in flight.
+ *
+ * Workers only communicate through the coordinator, so they could live in
+ * separate processes. {@link LocalCoordinator} is an in-process stand-in that
+ * runs the workers of one round in parallel on a thread pool.
+ *
+ * The result is reproducible, independent of the number of threads and the
+ * scheduling: a worker only reads its own state during a round, messages are
+ * committed in the order of the sending block and, within it, in the order
+ * they were sent, and each block is authoritative for its own variables. This
+ * requires that {@link Algorithm.ProblemGraph#solve(Set, Map)} is a function
+ * of its arguments, as it is for binary restoration (see
+ * {@link graphcut.MaxFlow#getTerminal(int)}).
+ */
+public class DistributedSolver
+{
+	/**
+	 * Assigns each variable to one of {@link #numBlocks()} blocks.
+	 */
+	public interface Partition< V >
+	{
+		public int numBlocks();
+
+		public int blockOf( V v );
+	}
+
+	/**
+	 * A committed local solution, sent from the block of its owner to another
+	 * block.
+	 */
+	public static class Message< V, R >
+	{
+		final int fromBlock;
+
+		final V owner;
+
+		final Map< V, R > solution;
+
+		public Message( final int fromBlock, final V owner, final Map< V, R > solution )
+		{
+			this.fromBlock = fromBlock;
+			this.owner = owner;
+			this.solution = solution;
+		}
+
+		public int getFromBlock()
+		{
+			return fromBlock;
+		}
+
+		public V getOwner()
+		{
+			return owner;
+		}
+
+		public Map< V, R > getSolution()
+		{
+			return solution;
+		}
+	}
+
+	/**
+	 * Exchanges boundary labels between workers.
+	 */
+	public interface Coordinator< V, R >
+	{
+		/**
+		 * Queue a message for delivery to {@code toBlock} at the end of the
+		 * current round.
+		 */
+		public void send( int toBlock, Message< V, R > message );
+
+		/**
+		 * End the current round.
+		 *
+		 * @return whether any message was sent during the round.
+		 */
+		public boolean exchange();
+
+		/**
+		 * @return messages for {@code block} that were delivered at the end of
+		 *         the last round, ordered by sending block.
+		 */
+		public List< Message< V, R > > receive( int block );
+	}
+
+	/**
+	 * In-process {@link Coordinator}.
+	 */
+	public static class LocalCoordinator< V, R > implements Coordinator< V, R >
+	{
+		// outboxes[ toBlock ][ fromBlock ]
+		private final List< List< List< Message< V, R > > > > outboxes;
+
+		private final List< List< Message< V, R > > > inboxes;
+
+		public LocalCoordinator( final int numBlocks )
+		{
+			outboxes = new ArrayList< List< List< Message< V, R > > > >( numBlocks );
+			inboxes = new ArrayList< List< Message< V, R > > >( numBlocks );
+			for ( int i = 0; i < numBlocks; ++i )
+			{
+				final List< List< Message< V, R > > > outbox = new ArrayList< List< Message< V, R > > >( numBlocks );
+				for ( int j = 0; j < numBlocks; ++j )
+					outbox.add( new ArrayList< Message< V, R > >() );
+				outboxes.add( outbox );
+				inboxes.add( Collections.< Message< V, R > >emptyList() );
+			}
+		}
+
+		@Override
+		public void send( final int toBlock, final Message< V, R > message )
+		{
+			// each (toBlock, fromBlock) list is only written by the worker of fromBlock
+			outboxes.get( toBlock ).get( message.getFromBlock() ).add( message );
+		}
+
+		@Override
+		public boolean exchange()
+		{
+			boolean sent = false;
+			for ( int i = 0; i < outboxes.size(); ++i )
+			{
+				final List< Message< V, R > > inbox = new ArrayList< Message< V, R > >();
+				for ( final List< Message< V, R > > outbox : outboxes.get( i ) )
+				{
+					inbox.addAll( outbox );
+					outbox.clear();
+				}
+				inboxes.set( i, inbox );
+				sent |= !inbox.isEmpty();
+			}
+			return sent;
+		}
+
+		@Override
+		public List< Message< V, R > > receive( final int block )
+		{
+			return inboxes.get( block );
+		}
+	}
+
+	/**
+	 * Owns the conflicts of one block.
+	 */
+	static class Worker< V, R >
+	{
+		final int block;
+
+		final Algorithm.ProblemGraph< V, R > problem;
+
+		final Partition< V > partition;
+
+		final Coordinator< V, R > coordinator;
+
+		final Algorithm.KappaUpdateFunction u;
+
+		final Deque< V > conflicts;
+
+		final Map< V, Integer > kappas;
+
+		// labels of the block and its boundary
+		final LabelStore< V, R > store;
+
+		/**
+		 * @param variables
+		 *            the variables of {@code block}.
+		 */
+		Worker( final int block, final Collection< V > variables, final Algorithm.ProblemGraph< V, R > problem, final Partition< V > partition, final Coordinator< V, R > coordinator, final int kappaStart, final Algorithm.KappaUpdateFunction u )
+		{
+			this.block = block;
+			this.problem = problem;
+			this.partition = partition;
+			this.coordinator = coordinator;
+			this.u = u;
+			// the block is small and local already, a plain queue sized to
+			// it is enough
+			conflicts = new ArrayDeque< V >( variables.size() );
+			kappas = new HashMap< V, Integer >();
+			for ( final V v : variables )
+			{
+				conflicts.add( v );
+				kappas.put( v, kappaStart );
+			}
+			store = new HashLabelStore< V, R >();
+		}
+
+		/**
+		 * Integrate the messages delivered at the end of the last round.
+		 */
+		void receive()
+		{
+			for ( final Message< V, R > message : coordinator.receive( block ) )
+				if ( store.commit( message.getOwner(), message.getSolution() ) )
+					enqueueInconsistent( message.getOwner(), message.getSolution().keySet() );
+		}
+
+		/**
+		 * Work off the conflict queue.
+		 */
+		void round()
+		{
+			while ( !conflicts.isEmpty() )
+			{
+				final V v = conflicts.removeFirst();
+
+				final Set< V > gammaV = problem.gamma( Collections.singleton( v ) );
+
+				// check whether the conflict still persists
+				if ( store.isCurrent( v, gammaV ) )
+					continue;
+
+				final int kappa = kappas.get( v );
+
+				final Map< V, R > sigma = problem.restrict( problem.solve( problem.gamma( kappa, gammaV ), store.asMap() ), gammaV );
+
+				if ( store.commit( v, sigma ) )
+				{
+					enqueueInconsistent( v, gammaV );
+
+					// send to the owners of the boundary
+					final Set< Integer > blocks = new HashSet< Integer >();
+					for ( final V vprime : gammaV )
+						blocks.add( partition.blockOf( vprime ) );
+					blocks.remove( block );
+					for ( final int b : blocks )
+						coordinator.send( b, new Message< V, R >( block, v, sigma ) );
+				}
+				kappas.put( v, u.next( kappa ) );
+			}
+		}
+
+		private void enqueueInconsistent( final V owner, final Set< V > region )
+		{
+			for ( final V vprime : region )
+				if ( vprime.equals( owner ) || partition.blockOf( vprime ) != block )
+					continue;
+				else if ( !store.isCurrent( vprime, problem.gamma( Collections.singleton( vprime ) ) ) )
+					conflicts.add( vprime );
+		}
+	}
+
+	/**
+	 * Solve with one worker per block of {@code partition}, running at most
+	 * {@code numThreads} workers at a time.
+	 */
+	public static < V, R > Map< V, R > solve( final Algorithm.ProblemGraph< V, R > problem, final int kappaStart, final Algorithm.KappaUpdateFunction u, final Partition< V > partition, final int numThreads )
+	{
+		final LocalCoordinator< V, R > coordinator = new LocalCoordinator< V, R >( partition.numBlocks() );
+		final ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+		try
+		{
+			return solve( problem, kappaStart, u, partition, coordinator, executor );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	public static < V, R > Map< V, R > solve( final Algorithm.ProblemGraph< V, R > problem, final int kappaStart, final Algorithm.KappaUpdateFunction u, final Partition< V > partition, final Coordinator< V, R > coordinator, final ExecutorService executor )
+	{
+		final int numBlocks = partition.numBlocks();
+
+		// bucket the variables by block in one pass
+		final List< List< V > > blockVariables = new ArrayList< List< V > >( numBlocks );
+		for ( int b = 0; b < numBlocks; ++b )
+			blockVariables.add( new ArrayList< V >() );
+		for ( final V v : problem.allVariables() )
+			blockVariables.get( partition.blockOf( v ) ).add( v );
+
+		final List< Worker< V, R > > workers = new ArrayList< Worker< V, R > >( numBlocks );
+		for ( int b = 0; b < numBlocks; ++b )
+		{
+			workers.add( new Worker< V, R >( b, blockVariables.get( b ), problem, partition, coordinator, kappaStart, u ) );
+			blockVariables.set( b, null );
+		}
+
+		final List< Callable< Void > > tasks = new ArrayList< Callable< Void > >( numBlocks );
+		for ( final Worker< V, R > worker : workers )
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					worker.receive();
+					worker.round();
+					return null;
+				}
+			} );
+
+		boolean active = true;
+		while ( active )
+		{
+			try
+			{
+				for ( final Future< Void > future : executor.invokeAll( tasks ) )
+					future.get();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException( "interrupted", e );
+			}
+			catch ( final ExecutionException e )
+			{
+				throw new RuntimeException( e.getCause() );
+			}
+			active = coordinator.exchange();
+		}
+
+		// each block is authoritative for the labels of its own variables
+		final Map< V, R > solution = new HashMap< V, R >();
+		for ( final Worker< V, R > worker : workers )
+			for ( final Map.Entry< V, R > entry : worker.store.asMap().entrySet() )
+				if ( partition.blockOf( entry.getKey() ) == worker.block )
+					solution.put( entry.getKey(), entry.getValue() );
+		return solution;
+	}
+}
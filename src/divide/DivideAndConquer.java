@@ -1,11 +1,18 @@
 package divide;
 
+import graphcut.GraphCut.Terminal;
+import graphcut.MaxFlow;
+import graphcut.MaxFlowBackend;
 import ij.ImageJ;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Deque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 
 import net.imglib2.RandomAccess;
@@ -23,6 +30,8 @@ public class DivideAndConquer
 {
 	static class BinaryRestorationGraph extends Algorithm.ProblemGraph< Integer, Integer >
 	{
+		static final int SCHEDULING_BLOCK_SIZE = 16;
+
 		final RandomAccessibleInterval< UnsignedByteType > img;
 
 		final int n;
@@ -31,10 +40,39 @@ public class DivideAndConquer
 
 		final int[][] neighborOffsets;
 
-		final HashSet< Integer > variables;
+		final IntRangeSet variables;
+
+		final MaxFlowBackend backend;
+
+		final BinaryRestoration.BoundaryCondition boundary;
+
+		final int certificateTileSize;
 
 		public BinaryRestorationGraph( final RandomAccessibleInterval< UnsignedByteType > img )
 		{
+			this( img, MaxFlowBackend.AUTO );
+		}
+
+		public BinaryRestorationGraph( final RandomAccessibleInterval< UnsignedByteType > img, final MaxFlowBackend backend )
+		{
+			this( img, backend, BinaryRestoration.BoundaryCondition.FREE );
+		}
+
+		public BinaryRestorationGraph( final RandomAccessibleInterval< UnsignedByteType > img, final MaxFlowBackend backend, final BinaryRestoration.BoundaryCondition boundary )
+		{
+			this( img, backend, boundary, 0 );
+		}
+
+		/**
+		 * @param certificateTileSize
+		 *            size of the tiles that are tested for persistency by
+		 *            {@link #certify()}, 0 to certify nothing.
+		 */
+		public BinaryRestorationGraph( final RandomAccessibleInterval< UnsignedByteType > img, final MaxFlowBackend backend, final BinaryRestoration.BoundaryCondition boundary, final int certificateTileSize )
+		{
+			this.backend = backend;
+			this.boundary = boundary;
+			this.certificateTileSize = certificateTileSize;
 			n = img.numDimensions();
 			dimensions = new long[ n ];
 			img.dimensions( dimensions );
@@ -51,9 +89,7 @@ public class DivideAndConquer
 
 			this.img = img;
 
-			variables = new HashSet< Integer >( ( int ) numNodes );
-			for ( int v = 0; v < numNodes; ++v )
-				variables.add( new Integer( v ) );
+			variables = new IntRangeSet( ( int ) numNodes );
 		}
 
 		@Override
@@ -65,7 +101,134 @@ public class DivideAndConquer
 		@Override
 		public Map< Integer, Integer > solve( final Set< Integer > region )
 		{
-			return BinaryRestoration.binaryRestoration( img, region );
+			return cut( region, Collections.< Integer, Integer >emptyMap(), BinaryRestoration.BoundaryCondition.FREE );
+		}
+
+		@Override
+		public Map< Integer, Integer > solve( final Set< Integer > region, final Map< Integer, Integer > labeling )
+		{
+			return solve( region, labeling, Collections.< Integer, Integer >emptyMap() );
+		}
+
+		/**
+		 * With {@link BinaryRestoration.BoundaryCondition#FREE}, the region
+		 * is conditioned on the {@code certified} labels only, otherwise on
+		 * the {@code labeling} around it. Certified pixels are not solved.
+		 */
+		@Override
+		public Map< Integer, Integer > solve( final Set< Integer > region, final Map< Integer, Integer > labeling, final Map< Integer, Integer > certified )
+		{
+			if ( certified.isEmpty() )
+				return cut( region, labeling, boundary );
+
+			// certified labels are optimal, so conditioning on them is exact
+			final Set< Integer > uncertified = new HashSet< Integer >( region );
+			uncertified.removeAll( certified.keySet() );
+			final Map< Integer, Integer > solution;
+			if ( boundary == BinaryRestoration.BoundaryCondition.FREE )
+				solution = cut( uncertified, certified, BinaryRestoration.BoundaryCondition.HARD );
+			else
+				solution = cut( uncertified, labeling, boundary );
+			for ( final Integer v : region )
+				if ( certified.containsKey( v ) )
+					solution.put( v, certified.get( v ) );
+			return solution;
+		}
+
+		/**
+		 * Cut {@code region}, coupled to the {@code boundaryLabels} around it
+		 * as given by {@code boundaryCondition}, see
+		 * {@link BinaryRestoration#binaryRestoration(RandomAccessibleInterval, Set, Map, BinaryRestoration.BoundaryCondition, MaxFlowBackend, Set)}.
+		 * All solves of regions go through this method.
+		 */
+		Map< Integer, Integer > cut( final Set< Integer > region, final Map< Integer, Integer > boundaryLabels, final BinaryRestoration.BoundaryCondition boundaryCondition )
+		{
+			return BinaryRestoration.binaryRestoration( img, region, boundaryLabels, boundaryCondition, backend, null );
+		}
+
+		/**
+		 * Test every tile of {@code certificateTileSize} pixels for
+		 * persistency, i.e., with everything around it fixed to 0 and to 1.
+		 * Nothing is stored, solves are conditioned on the certified labels
+		 * passed to {@link #solve(Set, Map, Map)}.
+		 */
+		@Override
+		public Map< Integer, Integer > certify()
+		{
+			if ( certificateTileSize < 1 )
+				return Collections.emptyMap();
+
+			// sort the variables by tile, the tiles themselves are built one
+			// at a time
+			final DistributedSolver.Partition< Integer > tiling = blockPartition( certificateTileSize );
+			final int numVariables = variables.size();
+			final int[] tileStarts = new int[ tiling.numBlocks() + 1 ];
+			for ( int v = 0; v < numVariables; ++v )
+				++tileStarts[ tiling.blockOf( v ) + 1 ];
+			for ( int i = 0; i < tiling.numBlocks(); ++i )
+				tileStarts[ i + 1 ] += tileStarts[ i ];
+			final int[] byTile = new int[ numVariables ];
+			final int[] next = Arrays.copyOf( tileStarts, tiling.numBlocks() );
+			for ( int v = 0; v < numVariables; ++v )
+				byTile[ next[ tiling.blockOf( v ) ]++ ] = v;
+
+			final BitLabeling certified = new BitLabeling( numVariables );
+			final Set< Integer > tile = new HashSet< Integer >();
+			final Set< Integer > persistent = new HashSet< Integer >();
+			for ( int i = 0; i < tiling.numBlocks(); ++i )
+			{
+				tile.clear();
+				for ( int j = tileStarts[ i ]; j < tileStarts[ i + 1 ]; ++j )
+					tile.add( byTile[ j ] );
+				persistent.clear();
+				final Map< Integer, Integer > solution = BinaryRestoration.binaryRestoration( img, tile, null, BinaryRestoration.BoundaryCondition.FREE, backend, persistent );
+				for ( final Integer v : persistent )
+					certified.set( v, solution.get( v ) );
+			}
+			return certified;
+		}
+
+		/**
+		 * Label each pixel by its own intensity, ignoring the smoothness
+		 * term.
+		 */
+		@Override
+		public Map< Integer, Integer > quickLabeling()
+		{
+			final BitLabeling labeling = new BitLabeling( variables.size() );
+			final RandomAccess< UnsignedByteType > a = img.randomAccess();
+			final long[] min = new long[ n ];
+			img.min( min );
+			final long[] position = new long[ n ];
+			a.setPosition( min );
+			for ( final Integer v : variables )
+			{
+				labeling.set( v, ( a.get().get() <= 0 ) ? 0 : 1 );
+				BinaryRestoration.fwdIndex( a, position, min, dimensions );
+			}
+			return labeling;
+		}
+
+		/**
+		 * Hand out conflicts block by block, so that successive solves work
+		 * on neighboring pixels.
+		 */
+		@Override
+		public Queue< Integer > createConflictQueue()
+		{
+			return new BlockConflictQueue( blockPartition( SCHEDULING_BLOCK_SIZE ), variables.size() );
+		}
+
+		@Override
+		public LabelStore< Integer, Integer > createLabelStore()
+		{
+			return new IntLabelStore( variables.size() );
+		}
+
+		@Override
+		public Map< Integer, Integer > createKappaMap()
+		{
+			return new IntKappaMap( variables.size() );
 		}
 
 		@Override
@@ -92,42 +255,101 @@ public class DivideAndConquer
 			return gammaR;
 		}
 
+		/**
+		 * Partition the image into blocks of {@code blockSize} pixels along
+		 * each dimension.
+		 */
+		public DistributedSolver.Partition< Integer > blockPartition( final int blockSize )
+		{
+			final long[] numBlocksPerDimension = new long[ n ];
+			int numBlocks = 1;
+			for ( int d = 0; d < n; ++d )
+			{
+				numBlocksPerDimension[ d ] = ( dimensions[ d ] + blockSize - 1 ) / blockSize;
+				numBlocks *= numBlocksPerDimension[ d ];
+			}
+			final int totalNumBlocks = numBlocks;
+
+			return new DistributedSolver.Partition< Integer >()
+			{
+				@Override
+				public int numBlocks()
+				{
+					return totalNumBlocks;
+				}
+
+				@Override
+				public int blockOf( final Integer v )
+				{
+					final long[] position = new long[ n ];
+					IntervalIndexer.indexToPosition( v, dimensions, position );
+					for ( int d = 0; d < n; ++d )
+						position[ d ] /= blockSize;
+					return ( int ) IntervalIndexer.positionToIndex( position, numBlocksPerDimension );
+				}
+			};
+		}
+
 		public void showSolution( final Map< Integer, Integer > solution )
 		{
 			// create segmentation image
 			final UnsignedByteType type = new UnsignedByteType();
 			final ArrayImgFactory< UnsignedByteType > factory = new ArrayImgFactory< UnsignedByteType >();
 			final Img< UnsignedByteType > restored = factory.create( img, type );
+			writeSolution( solution, restored );
+			ImageJFunctions.show( restored );
+		}
 
-			final RandomAccess< UnsignedByteType > access = restored.randomAccess();
+		/**
+		 * Write {@code solution} into {@code target}, which must have the
+		 * dimensions of the image: 0 for label 0, 255 otherwise. Pixel 0 is
+		 * written to the minimum of {@code target}. Pixels that are not
+		 * labeled are left unchanged. If the solution iterates its variables
+		 * in increasing order, e.g., a view of an {@link IntLabelStore}, the
+		 * access is only moved by single steps.
+		 */
+		public void writeSolution( final Map< Integer, Integer > solution, final RandomAccessibleInterval< UnsignedByteType > target )
+		{
+			final RandomAccess< UnsignedByteType > access = target.randomAccess();
+			final long[] min = new long[ n ];
+			target.min( min );
 			final long[] position = new long[ n ];
+			access.setPosition( min );
+			int current = 0;
 			for ( final Map.Entry< Integer, Integer > entry : solution.entrySet() )
 			{
 				final int nodeNum = entry.getKey();
-				final int value = entry.getValue();
-				IntervalIndexer.indexToPosition( nodeNum, dimensions, position );
-				access.setPosition( position );
-				if ( value == 0 )
+				if ( nodeNum == current + 1 )
+					BinaryRestoration.fwdIndex( access, position, min, dimensions );
+				else if ( nodeNum != current )
+				{
+					IntervalIndexer.indexToPosition( nodeNum, dimensions, position );
+					for ( int d = 0; d < n; ++d )
+						access.setPosition( min[ d ] + position[ d ], d );
+				}
+				current = nodeNum;
+				if ( entry.getValue() == 0 )
 					access.get().set( 0 );
 				else
 					access.get().set( 255 );
 			}
-
-			ImageJFunctions.show( restored );
 		}
 
-		public void showConflicts( final Deque< Integer > conflicts )
+		public void showConflicts( final Collection< Integer > conflicts )
 		{
 			final UnsignedByteType type = new UnsignedByteType();
 			final ArrayImgFactory< UnsignedByteType > factory = new ArrayImgFactory< UnsignedByteType >();
 			final Img< UnsignedByteType > restored = factory.create( img, type );
 
 			final RandomAccess< UnsignedByteType > access = restored.randomAccess();
+			final long[] min = new long[ n ];
+			restored.min( min );
 			final long[] position = new long[ n ];
 			for ( final int v : conflicts )
 			{
 				IntervalIndexer.indexToPosition( v, dimensions, position );
-				access.setPosition( position );
+				for ( int d = 0; d < n; ++d )
+					access.setPosition( min[ d ] + position[ d ], d );
 				access.get().set( 255 );
 			}
 
@@ -141,13 +363,16 @@ public class DivideAndConquer
 			final Img< UnsignedByteType > restored = factory.create( img, type );
 
 			final RandomAccess< UnsignedByteType > access = restored.randomAccess();
+			final long[] min = new long[ n ];
+			restored.min( min );
 			final long[] position = new long[ n ];
 			for ( final Map.Entry< Integer, Integer > entry : kappas.entrySet() )
 			{
 				final int nodeNum = entry.getKey();
 				final int value = entry.getValue();
 				IntervalIndexer.indexToPosition( nodeNum, dimensions, position );
-				access.setPosition( position );
+				for ( int d = 0; d < n; ++d )
+					access.setPosition( min[ d ] + position[ d ], d );
 				access.get().set( value );
 			}
 
@@ -155,6 +380,325 @@ public class DivideAndConquer
 		}
 	}
 
+	/**
+	 * {@link BinaryRestorationGraph} that solves regions by dynamic updates of
+	 * a long-lived graph over a window of the image, reusing the search trees
+	 * of the previous solve, instead of building a new graph for each region.
+	 *
+	 * The window is a box of {@code windowSize} pixels along each dimension.
+	 * It is placed around the first region and moved when a region does not
+	 * fit into it. Regions that are larger than a window are cut with a new
+	 * graph. Every pixel of the window outside the region is clamped to a
+	 * label by a terminal weight that dominates all of its edges. The
+	 * coupling of the region to the labels around it is then expressed by
+	 * terminal weights of the region's pixels, which also cancel the edges to
+	 * clamped neighbors whose clamp differs from their coupling. Between two
+	 * solves in the same window, only the pixels of the previous and the
+	 * current region change their terminal weights.
+	 *
+	 * The result equals that of {@link BinaryRestorationGraph} for every
+	 * region, labeling and boundary condition, so it depends only on the
+	 * arguments of a solve. Solves that run at the same time use windows of
+	 * their own. Windows are kept by the graph between solves, so there are
+	 * as many as solves ran at the same time, and each solve takes one that
+	 * already contains its region, if there is one.
+	 */
+	static class DynamicBinaryRestorationGraph extends BinaryRestorationGraph
+	{
+		final int windowSize;
+
+		// more than the weights of all edges of a pixel and its unary term
+		final float clampWeight;
+
+		// windows that no solve is using
+		final ArrayList< Window > idleWindows = new ArrayList< Window >();
+
+		/**
+		 * @param windowSize
+		 *            size of the window along each dimension.
+		 */
+		public DynamicBinaryRestorationGraph( final RandomAccessibleInterval< UnsignedByteType > img, final MaxFlowBackend backend, final BinaryRestoration.BoundaryCondition boundary, final int certificateTileSize, final int windowSize )
+		{
+			super( img, backend, boundary, certificateTileSize );
+			if ( windowSize < 1 )
+				throw new IllegalArgumentException( "window size must be positive" );
+			this.windowSize = windowSize;
+			clampWeight = 2 * n * BinaryRestoration.pottsWeight + 2;
+		}
+
+		@Override
+		Map< Integer, Integer > cut( final Set< Integer > region, final Map< Integer, Integer > boundaryLabels, final BinaryRestoration.BoundaryCondition boundaryCondition )
+		{
+			final long[] regionMin = new long[ n ];
+			final long[] regionMax = new long[ n ];
+			Arrays.fill( regionMin, Long.MAX_VALUE );
+			Arrays.fill( regionMax, Long.MIN_VALUE );
+			final long[] position = new long[ n ];
+			for ( final int v : region )
+			{
+				IntervalIndexer.indexToPosition( v, dimensions, position );
+				for ( int d = 0; d < n; ++d )
+				{
+					regionMin[ d ] = Math.min( regionMin[ d ], position[ d ] );
+					regionMax[ d ] = Math.max( regionMax[ d ], position[ d ] );
+				}
+			}
+			for ( int d = 0; d < n; ++d )
+				if ( regionMax[ d ] - regionMin[ d ] >= windowSize )
+					return super.cut( region, boundaryLabels, boundaryCondition );
+
+			final Window window = acquireWindow( regionMin, regionMax );
+			if ( !window.contains( regionMin, regionMax ) )
+				window.moveTo( regionMin, regionMax );
+			final Map< Integer, Integer > solution = window.cut( region, boundaryLabels, boundaryCondition );
+
+			// a window whose cut failed may be inconsistent and is dropped
+			synchronized ( idleWindows )
+			{
+				idleWindows.add( window );
+			}
+			return solution;
+		}
+
+		/**
+		 * @return an idle window that contains the box, another idle window
+		 *         if there is none, or a new window.
+		 */
+		Window acquireWindow( final long[] regionMin, final long[] regionMax )
+		{
+			synchronized ( idleWindows )
+			{
+				for ( int i = idleWindows.size() - 1; i >= 0; --i )
+					if ( idleWindows.get( i ).contains( regionMin, regionMax ) )
+						return idleWindows.remove( i );
+				if ( !idleWindows.isEmpty() )
+					return idleWindows.remove( idleWindows.size() - 1 );
+			}
+			return new Window();
+		}
+
+		/**
+		 * A graph over a box of the image and the state of its last solve.
+		 * Graph nodes are numbered in the flat iteration order of the box.
+		 */
+		class Window
+		{
+			final long[] min = new long[ n ];
+
+			final long[] size = new long[ n ];
+
+			// false until the window is placed
+			boolean placed = false;
+
+			MaxFlow graphCut = null;
+
+			// whether the graph holds a flow whose search trees can be reused
+			boolean solved;
+
+			// label each pixel outside of the region is clamped to
+			byte[] clamps;
+
+			// terminal weight (source minus sink) that is added to the unary
+			// term of each pixel, for its clamp or its coupling
+			float[] applied;
+
+			// nodes of the region of the last solve
+			int[] previousRegion = new int[ 0 ];
+
+			boolean[] inRegion;
+
+			boolean contains( final long[] regionMin, final long[] regionMax )
+			{
+				if ( !placed )
+					return false;
+				for ( int d = 0; d < n; ++d )
+					if ( regionMin[ d ] < min[ d ] || regionMax[ d ] >= min[ d ] + size[ d ] )
+						return false;
+				return true;
+			}
+
+			/**
+			 * Center the window on a region and build its graph with all
+			 * pixels clamped to their own intensity.
+			 */
+			void moveTo( final long[] regionMin, final long[] regionMax )
+			{
+				int numNodes = 1;
+				int numEdges = 0;
+				for ( int d = 0; d < n; ++d )
+				{
+					size[ d ] = Math.min( windowSize, dimensions[ d ] );
+					final long margin = ( size[ d ] - ( regionMax[ d ] - regionMin[ d ] + 1 ) ) / 2;
+					min[ d ] = Math.max( 0, Math.min( regionMin[ d ] - margin, dimensions[ d ] - size[ d ] ) );
+					numNodes *= size[ d ];
+				}
+				for ( int d = 0; d < n; ++d )
+					numEdges += numNodes / size[ d ] * ( size[ d ] - 1 );
+
+				// windows have the same size unless the image is smaller, so
+				// the graph is allocated once
+				if ( graphCut == null )
+				{
+					final boolean integral = BinaryRestoration.integerCapacities && boundary.weight == ( int ) boundary.weight;
+					graphCut = backend.create( numNodes, numEdges, integral );
+					clamps = new byte[ numNodes ];
+					applied = new float[ numNodes ];
+					inRegion = new boolean[ numNodes ];
+				}
+				else
+					graphCut.reset();
+
+				final RandomAccess< UnsignedByteType > a = img.randomAccess();
+				final long[] imgMin = new long[ n ];
+				img.min( imgMin );
+				final long[] position = new long[ n ];
+				final long[] start = new long[ n ];
+				for ( int d = 0; d < n; ++d )
+					start[ d ] = imgMin[ d ] + min[ d ];
+				a.setPosition( start );
+				for ( int node = 0; node < numNodes; ++node )
+				{
+					final int Ipo = ( a.get().get() <= 0 ) ? 0 : 1;
+					clamps[ node ] = ( byte ) Ipo;
+					applied[ node ] = clampWeight * sign( Ipo );
+					inRegion[ node ] = false;
+					final float source = 1 - Ipo + Math.max( applied[ node ], 0 );
+					final float sink = Ipo + Math.max( -applied[ node ], 0 );
+					graphCut.setTerminalWeights( node, source, sink );
+					BinaryRestoration.fwdIndex( a, position, start, size );
+				}
+				BinaryRestoration.setEdgeWeights( graphCut, size );
+
+				previousRegion = new int[ 0 ];
+				solved = false;
+				placed = true;
+			}
+
+			Map< Integer, Integer > cut( final Set< Integer > region, final Map< Integer, Integer > boundaryLabels, final BinaryRestoration.BoundaryCondition boundaryCondition )
+			{
+				final int[] variables = new int[ region.size() ];
+				int j = 0;
+				for ( final int v : region )
+					variables[ j++ ] = v;
+				final int[] nodes = new int[ variables.length ];
+				final long[] position = new long[ n ];
+				for ( j = 0; j < variables.length; ++j )
+				{
+					IntervalIndexer.indexToPosition( variables[ j ], dimensions, position );
+					for ( int d = 0; d < n; ++d )
+						position[ d ] -= min[ d ];
+					nodes[ j ] = ( int ) IntervalIndexer.positionToIndex( position, size );
+				}
+
+				// pixels that leave the region are clamped, to their label if
+				// they have one
+				for ( final int node : previousRegion )
+					inRegion[ node ] = false;
+				for ( final int node : nodes )
+					inRegion[ node ] = true;
+				for ( final int node : previousRegion )
+					if ( !inRegion[ node ] )
+					{
+						final Integer label = boundaryLabels.get( variable( node, position ) );
+						if ( label != null )
+							clamps[ node ] = ( byte ) ( label == 0 ? 0 : 1 );
+						update( node, clampWeight * sign( clamps[ node ] ) );
+					}
+
+				// couple the region to the pixels around it
+				for ( j = 0; j < nodes.length; ++j )
+					update( nodes[ j ], coupling( variables[ j ], boundaryLabels, boundaryCondition.weight ) );
+
+				graphCut.computeMaximumFlow( solved, null );
+				solved = true;
+				previousRegion = nodes;
+
+				final Map< Integer, Integer > solution = new HashMap< Integer, Integer >();
+				for ( j = 0; j < variables.length; ++j )
+					solution.put( variables[ j ], graphCut.getTerminal( nodes[ j ] ) == Terminal.FOREGROUND ? 0 : 1 );
+				return solution;
+			}
+
+			/**
+			 * @return terminal weight (source minus sink) that couples
+			 *         {@code v} to its neighbors outside the region with
+			 *         {@code weight}, canceling the edges to its clamped
+			 *         neighbors.
+			 */
+			float coupling( final int v, final Map< Integer, Integer > boundaryLabels, final float weight )
+			{
+				final long[] position = new long[ n ];
+				float coupling = 0;
+				for ( int i = 0; i < neighborOffsets.length; ++i )
+				{
+					IntervalIndexer.indexToPosition( v, dimensions, position );
+					boolean inWindow = true;
+					boolean inImage = true;
+					for ( int d = 0; d < n; ++d )
+					{
+						position[ d ] += neighborOffsets[ i ][ d ];
+						inImage &= position[ d ] >= 0 && position[ d ] < dimensions[ d ];
+						inWindow &= position[ d ] >= min[ d ] && position[ d ] < min[ d ] + size[ d ];
+					}
+					if ( !inImage )
+						continue;
+
+					final int neighbor = ( int ) IntervalIndexer.positionToIndex( position, dimensions );
+					if ( inWindow )
+					{
+						for ( int d = 0; d < n; ++d )
+							position[ d ] -= min[ d ];
+						final int node = ( int ) IntervalIndexer.positionToIndex( position, size );
+						if ( inRegion[ node ] )
+							continue;
+
+						// the edge to a neighbor clamped to label l penalizes
+						// the other label, cancel it
+						coupling -= BinaryRestoration.pottsWeight * sign( clamps[ node ] );
+					}
+
+					// a neighbor with label l penalizes the other label
+					final Integer label = boundaryLabels.get( neighbor );
+					if ( label != null )
+						coupling += weight * sign( label );
+				}
+				return coupling;
+			}
+
+			/**
+			 * Change the terminal weight added to {@code node} and mark it for
+			 * the next dynamic update.
+			 */
+			void update( final int node, final float weight )
+			{
+				final float delta = weight - applied[ node ];
+				if ( delta == 0 )
+					return;
+				if ( delta > 0 )
+					graphCut.setTerminalWeights( node, delta, 0 );
+				else
+					graphCut.setTerminalWeights( node, 0, -delta );
+				if ( solved )
+					graphCut.markNode( node );
+				applied[ node ] = weight;
+			}
+
+			int variable( final int node, final long[] position )
+			{
+				IntervalIndexer.indexToPosition( node, size, position );
+				for ( int d = 0; d < n; ++d )
+					position[ d ] += min[ d ];
+				return ( int ) IntervalIndexer.positionToIndex( position, dimensions );
+			}
+		}
+
+		// label 0 is the source side
+		private static int sign( final int label )
+		{
+			return label == 0 ? 1 : -1;
+		}
+	}
+
 	public static void main( final String[] args ) throws ImgIOException
 	{
 		final String fn = "binary-noisy.tif";
@@ -177,7 +721,11 @@ public class DivideAndConquer
 			}
 		} );
 		graph.showSolution( solution );
-//		graph.showConflicts( ( Deque< Integer > ) Algorithm.conflictsRemaining );
+//		graph.showConflicts( ( Collection< Integer > ) Algorithm.conflictsRemaining );
 		graph.showKappas( ( Map< Integer, Integer > ) Algorithm.kappasFinal );
+
+		final RestorationPlanner.Plan plan = new RestorationPlanner().plan( img );
+		System.out.println( plan );
+		ImageJFunctions.show( plan.restore( img ), plan.getStrategy().toString() );
 	}
 }
@@ -0,0 +1,186 @@
+package divide;
+
+import graphcut.MaxFlowBackend;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.view.Views;
+
+/**
+ * Randomized check of the region solves and the determinism of divide and
+ * conquer on small random binary images.
+ *
+ * For every boundary condition, random regions with random partial labelings
+ * are solved, with and without certificates, by a
+ * {@link DivideAndConquer.BinaryRestorationGraph} and, one after another, by
+ * a {@link DivideAndConquer.DynamicBinaryRestorationGraph}, whose solutions
+ * must be equal. Then the image is restored by {@link Solver} and by
+ * {@link DistributedSolver}, with both graphs and on one and on several
+ * threads. The restorations of each solver must be equal.
+ *
+ * Usage: <tt>DivideAndConquerCheck [numImages [seed]]</tt>. Exits with status
+ * 1 if any check fails.
+ */
+public class DivideAndConquerCheck
+{
+	static final int MAX_SIZE_2D = 40;
+
+	static final int MAX_SIZE_3D = 10;
+
+	static final double MAX_NOISE = 0.1;
+
+	static final int NUM_SOLVES = 40;
+
+	static final int MAX_KAPPA = 6;
+
+	static final int NUM_THREADS = 3;
+
+	static final int MAX_TRANSLATION = 20;
+
+	public static void main( final String[] args )
+	{
+		final int numImages = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 50;
+		final long seed = args.length > 1 ? Long.parseLong( args[ 1 ] ) : 0;
+
+		final Random random = new Random( seed );
+		int numFailures = 0;
+		for ( int i = 0; i < numImages; ++i )
+		{
+			final long imageSeed = random.nextLong();
+			if ( !checkRegions( imageSeed ) )
+			{
+				System.out.println( "region solves differ: image " + i );
+				++numFailures;
+			}
+			if ( !checkSolvers( imageSeed ) )
+			{
+				System.out.println( "restorations differ: image " + i );
+				++numFailures;
+			}
+		}
+
+		System.out.println( numImages + " images, " + numFailures + " failures" );
+		if ( numFailures > 0 )
+			System.exit( 1 );
+	}
+
+	/**
+	 * Solve random regions of a random image with fresh and dynamic graphs.
+	 *
+	 * @return whether all solutions agree
+	 */
+	static boolean checkRegions( final long seed )
+	{
+		final Random random = new Random( seed );
+		final RandomAccessibleInterval< UnsignedByteType > img = randomImage( random );
+		final int windowSize = 2 + random.nextInt( 16 );
+
+		for ( final BinaryRestoration.BoundaryCondition boundary : BinaryRestoration.BoundaryCondition.values() )
+		{
+			final DivideAndConquer.BinaryRestorationGraph fresh = new DivideAndConquer.BinaryRestorationGraph( img, MaxFlowBackend.AUTO, boundary, 4 );
+			final DivideAndConquer.DynamicBinaryRestorationGraph dynamic = new DivideAndConquer.DynamicBinaryRestorationGraph( img, MaxFlowBackend.AUTO, boundary, 4, windowSize );
+			final Map< Integer, Integer > certified = fresh.certify();
+			final int numVariables = fresh.allVariables().size();
+
+			for ( int s = 0; s < NUM_SOLVES; ++s )
+			{
+				// one or two nearby centers, grown by a random kappa
+				final Set< Integer > centers = new HashSet< Integer >();
+				final int center = random.nextInt( numVariables );
+				centers.add( center );
+				if ( random.nextBoolean() )
+					centers.add( Math.min( numVariables - 1, center + random.nextInt( 4 ) ) );
+				final Set< Integer > region = fresh.gamma( 1 + random.nextInt( MAX_KAPPA ), centers );
+
+				final Map< Integer, Integer > labeling = new HashMap< Integer, Integer >();
+				final double labeled = random.nextDouble();
+				for ( int v = 0; v < numVariables; ++v )
+					if ( random.nextDouble() < labeled )
+						labeling.put( v, random.nextInt( 2 ) );
+
+				final Map< Integer, Integer > c = random.nextBoolean() ? certified : new HashMap< Integer, Integer >();
+				if ( !fresh.solve( region, labeling, c ).equals( dynamic.solve( region, labeling, c ) ) )
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Restore a random image with {@link Solver} and
+	 * {@link DistributedSolver}, with fresh and dynamic graphs.
+	 *
+	 * @return whether the restorations of each solver agree, for all graphs
+	 *         and numbers of threads
+	 */
+	static boolean checkSolvers( final long seed )
+	{
+		final Random random = new Random( seed );
+		final RandomAccessibleInterval< UnsignedByteType > img = randomImage( random );
+		final int windowSize = 2 + random.nextInt( 16 );
+		final int certificateTileSize = random.nextBoolean() ? 4 : 0;
+
+		final DivideAndConquer.BinaryRestorationGraph fresh = new DivideAndConquer.BinaryRestorationGraph( img, MaxFlowBackend.AUTO, BinaryRestoration.BoundaryCondition.FREE, certificateTileSize );
+		final DivideAndConquer.DynamicBinaryRestorationGraph dynamic = new DivideAndConquer.DynamicBinaryRestorationGraph( img, MaxFlowBackend.AUTO, BinaryRestoration.BoundaryCondition.FREE, certificateTileSize, windowSize );
+		final Algorithm.KappaUpdateFunction u = new Algorithm.KappaUpdateFunction()
+		{
+			@Override
+			public int next( final int kappa )
+			{
+				return kappa + 1;
+			}
+		};
+
+		final Map< Integer, Integer > solution = new Solver< Integer, Integer >( fresh, 1, u ).solve().getLabeling();
+		if ( !solution.equals( new Solver< Integer, Integer >( dynamic, 1, u ).solve().getLabeling() ) )
+			return false;
+
+		final DistributedSolver.Partition< Integer > partition = fresh.blockPartition( 1 + random.nextInt( 12 ) );
+		final Map< Integer, Integer > distributed = DistributedSolver.solve( fresh, 1, u, partition, 1 );
+		return distributed.equals( DistributedSolver.solve( dynamic, 1, u, partition, 1 ) ) && distributed.equals( DistributedSolver.solve( dynamic, 1, u, partition, NUM_THREADS ) );
+	}
+
+	/**
+	 * @return a two- or three-dimensional image of checkerboard blocks with
+	 *         random noise, half of the time translated to a non-zero
+	 *         minimum.
+	 */
+	static RandomAccessibleInterval< UnsignedByteType > randomImage( final Random random )
+	{
+		final long[] dimensions;
+		if ( random.nextInt( 4 ) == 0 )
+			dimensions = new long[] { 1 + random.nextInt( MAX_SIZE_3D ), 1 + random.nextInt( MAX_SIZE_3D ), 1 + random.nextInt( MAX_SIZE_3D ) };
+		else
+			dimensions = new long[] { 1 + random.nextInt( MAX_SIZE_2D ), 1 + random.nextInt( MAX_SIZE_2D ) };
+		final int blockSize = 4 + random.nextInt( 5 );
+		final double noise = MAX_NOISE * random.nextDouble();
+
+		int numPixels = 1;
+		for ( final long dimension : dimensions )
+			numPixels *= dimension;
+		final byte[] pixels = new byte[ numPixels ];
+		for ( int i = 0; i < numPixels; ++i )
+		{
+			int block = 0;
+			for ( int d = 0, rest = i; d < dimensions.length; rest /= dimensions[ d ], ++d )
+				block += rest % dimensions[ d ] / blockSize;
+			final boolean foreground = ( block % 2 == 0 ) != ( random.nextDouble() < noise );
+			pixels[ i ] = ( byte ) ( foreground ? 255 : 0 );
+		}
+		final RandomAccessibleInterval< UnsignedByteType > img = ArrayImgs.unsignedBytes( pixels, dimensions );
+		if ( random.nextBoolean() )
+			return img;
+
+		final long[] translation = new long[ dimensions.length ];
+		for ( int d = 0; d < dimensions.length; ++d )
+			translation[ d ] = random.nextInt( 2 * MAX_TRANSLATION + 1 ) - MAX_TRANSLATION;
+		return Views.translate( img, translation );
+	}
+}
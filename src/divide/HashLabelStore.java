@@ -0,0 +1,102 @@
+package divide;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link LabelStore} for arbitrary variables, backed by hash maps.
+ *
+ * @param <V>
+ *            variable type
+ * @param <R>
+ *            range type
+ */
+public class HashLabelStore< V, R > extends LabelStore< V, R >
+{
+	private final HashMap< V, R > labels = new HashMap< V, R >();
+
+	private final HashMap< V, V > owners = new HashMap< V, V >();
+
+	private final HashMap< V, Integer > versions = new HashMap< V, Integer >();
+
+	private final HashMap< V, Integer > commitVersions = new HashMap< V, Integer >();
+
+	private int version = 0;
+
+	@Override
+	public R get( final V v )
+	{
+		return labels.get( v );
+	}
+
+	@Override
+	public void put( final V v, final R label )
+	{
+		labels.put( v, label );
+		owners.remove( v );
+		versions.put( v, 0 );
+	}
+
+	@Override
+	public void markCommitted( final V owner )
+	{
+		commitVersions.put( owner, version );
+	}
+
+	@Override
+	public boolean commit( final V owner, final Map< V, R > solution )
+	{
+		++version;
+		boolean changed = false;
+		for ( final Map.Entry< V, R > entry : solution.entrySet() )
+		{
+			final V v = entry.getKey();
+			final R label = entry.getValue();
+			if ( !label.equals( labels.get( v ) ) )
+			{
+				labels.put( v, label );
+				owners.put( v, owner );
+				versions.put( v, version );
+				changed = true;
+			}
+		}
+		commitVersions.put( owner, version );
+		return changed;
+	}
+
+	@Override
+	public boolean isCurrent( final V owner, final Set< V > region )
+	{
+		final Integer committed = commitVersions.get( owner );
+		if ( committed == null )
+			return false;
+		for ( final V v : region )
+		{
+			final Integer changed = versions.get( v );
+			if ( changed != null && changed > committed )
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public V getOwner( final V v )
+	{
+		return owners.get( v );
+	}
+
+	@Override
+	public int getVersion( final V v )
+	{
+		final Integer changed = versions.get( v );
+		return changed == null ? -1 : changed;
+	}
+
+	@Override
+	public Map< V, R > asMap()
+	{
+		return Collections.unmodifiableMap( labels );
+	}
+}
@@ -0,0 +1,157 @@
+package divide;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Dense map from the variables <em>0,...,numVariables-1</em> to their kappas,
+ * one <code>int</code> per variable instead of a boxed entry. Kappas must not
+ * be negative. Iterates over the variables with kappa in increasing order.
+ */
+public class IntKappaMap extends AbstractMap< Integer, Integer >
+{
+	/**
+	 * Kappa of a variable that is not in the map.
+	 */
+	public static final int ABSENT = -1;
+
+	private final int[] kappas;
+
+	private int size = 0;
+
+	public IntKappaMap( final int numVariables )
+	{
+		kappas = new int[ numVariables ];
+		Arrays.fill( kappas, ABSENT );
+	}
+
+	public int numVariables()
+	{
+		return kappas.length;
+	}
+
+	/**
+	 * @return the kappa of {@code v}, {@link #ABSENT} if {@code v} has none.
+	 */
+	public int getKappa( final int v )
+	{
+		return kappas[ v ];
+	}
+
+	/**
+	 * The kappas of all variables, {@link #ABSENT} for variables without
+	 * kappa. Not a copy.
+	 */
+	int[] getKappas()
+	{
+		return kappas;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public Integer get( final Object key )
+	{
+		if ( !( key instanceof Integer ) )
+			return null;
+		final int v = ( Integer ) key;
+		return v >= 0 && v < kappas.length && kappas[ v ] != ABSENT ? kappas[ v ] : null;
+	}
+
+	@Override
+	public boolean containsKey( final Object key )
+	{
+		return get( key ) != null;
+	}
+
+	@Override
+	public Integer put( final Integer v, final Integer kappa )
+	{
+		if ( kappa < 0 )
+			throw new IllegalArgumentException( "kappa of variable " + v + " must not be negative, got " + kappa );
+		final Integer previous = get( v );
+		if ( previous == null )
+			++size;
+		kappas[ v ] = kappa;
+		return previous;
+	}
+
+	@Override
+	public Integer remove( final Object key )
+	{
+		final Integer previous = get( key );
+		if ( previous != null )
+		{
+			kappas[ ( Integer ) key ] = ABSENT;
+			--size;
+		}
+		return previous;
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill( kappas, ABSENT );
+		size = 0;
+	}
+
+	@Override
+	public Set< Map.Entry< Integer, Integer > > entrySet()
+	{
+		return new AbstractSet< Map.Entry< Integer, Integer > >()
+		{
+			@Override
+			public int size()
+			{
+				return size;
+			}
+
+			@Override
+			public Iterator< Map.Entry< Integer, Integer > > iterator()
+			{
+				return new Iterator< Map.Entry< Integer, Integer > >()
+				{
+					int next = advance( 0 );
+
+					int advance( int v )
+					{
+						while ( v < kappas.length && kappas[ v ] == ABSENT )
+							++v;
+						return v;
+					}
+
+					@Override
+					public boolean hasNext()
+					{
+						return next < kappas.length;
+					}
+
+					@Override
+					public Map.Entry< Integer, Integer > next()
+					{
+						if ( !hasNext() )
+							throw new NoSuchElementException();
+						final int v = next;
+						next = advance( v + 1 );
+						return new SimpleImmutableEntry< Integer, Integer >( v, kappas[ v ] );
+					}
+
+					@Override
+					public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+}
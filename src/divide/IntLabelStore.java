@@ -0,0 +1,223 @@
+package divide;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Dense {@link LabelStore} for <code>int</code> labels of the variables
+ * <em>0,...,numVariables-1</em>. Memory is a few <code>int</code>s per
+ * variable, independent of the size of the local solutions.
+ */
+public class IntLabelStore extends LabelStore< Integer, Integer >
+{
+	private final int numVariables;
+
+	private final int[] labels;
+
+	// owner of the commit that last changed the label, -1 if none
+	private final int[] owners;
+
+	// version of the commit that last changed the label, -1 if unlabeled
+	private final int[] versions;
+
+	// version of the last commit of each owner, -1 if never committed
+	private final int[] commitVersions;
+
+	private int version = 0;
+
+	private int numLabeled = 0;
+
+	public IntLabelStore( final int numVariables )
+	{
+		this.numVariables = numVariables;
+		labels = new int[ numVariables ];
+		owners = new int[ numVariables ];
+		versions = new int[ numVariables ];
+		commitVersions = new int[ numVariables ];
+		Arrays.fill( owners, -1 );
+		Arrays.fill( versions, -1 );
+		Arrays.fill( commitVersions, -1 );
+	}
+
+	public int numVariables()
+	{
+		return numVariables;
+	}
+
+	public boolean isLabeled( final int v )
+	{
+		return versions[ v ] >= 0;
+	}
+
+	/**
+	 * @return the label of {@code v}, undefined if {@code v} is not labeled.
+	 */
+	public int getLabel( final int v )
+	{
+		return labels[ v ];
+	}
+
+	/**
+	 * @return image of the given dimensions that wraps the labels of this
+	 *         store without copying them, i.e., changes of the labels are
+	 *         visible in the image. Pixels of variables that are not labeled
+	 *         are undefined.
+	 */
+	public ArrayImg< IntType, ? > asImg( final long... dimensions )
+	{
+		if ( Intervals.numElements( dimensions ) != numVariables )
+			throw new IllegalArgumentException( "dimensions do not match the number of variables" );
+		return ArrayImgs.ints( labels, dimensions );
+	}
+
+	@Override
+	public Integer get( final Integer v )
+	{
+		return isLabeled( v ) ? labels[ v ] : null;
+	}
+
+	@Override
+	public void put( final Integer v, final Integer label )
+	{
+		if ( !isLabeled( v ) )
+			++numLabeled;
+		labels[ v ] = label;
+		owners[ v ] = -1;
+		versions[ v ] = 0;
+	}
+
+	@Override
+	public void markCommitted( final Integer owner )
+	{
+		commitVersions[ owner ] = version;
+	}
+
+	@Override
+	public boolean commit( final Integer owner, final Map< Integer, Integer > solution )
+	{
+		++version;
+		boolean changed = false;
+		for ( final Map.Entry< Integer, Integer > entry : solution.entrySet() )
+		{
+			final int v = entry.getKey();
+			final int label = entry.getValue();
+			if ( !isLabeled( v ) )
+				++numLabeled;
+			else if ( labels[ v ] == label )
+				continue;
+			labels[ v ] = label;
+			owners[ v ] = owner;
+			versions[ v ] = version;
+			changed = true;
+		}
+		commitVersions[ owner ] = version;
+		return changed;
+	}
+
+	@Override
+	public boolean isCurrent( final Integer owner, final Set< Integer > region )
+	{
+		final int committed = commitVersions[ owner ];
+		if ( committed < 0 )
+			return false;
+		for ( final int v : region )
+			if ( versions[ v ] > committed )
+				return false;
+		return true;
+	}
+
+	@Override
+	public Integer getOwner( final Integer v )
+	{
+		return owners[ v ] < 0 ? null : owners[ v ];
+	}
+
+	@Override
+	public int getVersion( final Integer v )
+	{
+		return versions[ v ];
+	}
+
+	@Override
+	public Map< Integer, Integer > asMap()
+	{
+		return new AbstractMap< Integer, Integer >()
+		{
+			@Override
+			public Integer get( final Object key )
+			{
+				if ( !( key instanceof Integer ) )
+					return null;
+				final int v = ( Integer ) key;
+				return v >= 0 && v < numVariables ? IntLabelStore.this.get( v ) : null;
+			}
+
+			@Override
+			public boolean containsKey( final Object key )
+			{
+				return get( key ) != null;
+			}
+
+			@Override
+			public Set< Map.Entry< Integer, Integer > > entrySet()
+			{
+				return new AbstractSet< Map.Entry< Integer, Integer > >()
+				{
+					@Override
+					public int size()
+					{
+						return numLabeled;
+					}
+
+					@Override
+					public Iterator< Map.Entry< Integer, Integer > > iterator()
+					{
+						return new Iterator< Map.Entry< Integer, Integer > >()
+						{
+							int next = advance( 0 );
+
+							int advance( int v )
+							{
+								while ( v < numVariables && !isLabeled( v ) )
+									++v;
+								return v;
+							}
+
+							@Override
+							public boolean hasNext()
+							{
+								return next < numVariables;
+							}
+
+							@Override
+							public Map.Entry< Integer, Integer > next()
+							{
+								if ( !hasNext() )
+									throw new NoSuchElementException();
+								final int v = next;
+								next = advance( v + 1 );
+								return new SimpleImmutableEntry< Integer, Integer >( v, labels[ v ] );
+							}
+
+							@Override
+							public void remove()
+							{
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+				};
+			}
+		};
+	}
+}
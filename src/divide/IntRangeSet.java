@@ -0,0 +1,65 @@
+package divide;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The variables <em>0,...,numVariables-1</em> as an unmodifiable set, without
+ * storing them. Iterates in increasing order.
+ */
+public class IntRangeSet extends AbstractSet< Integer >
+{
+	private final int numVariables;
+
+	public IntRangeSet( final int numVariables )
+	{
+		if ( numVariables < 0 )
+			throw new IllegalArgumentException( "number of variables must not be negative, got " + numVariables );
+		this.numVariables = numVariables;
+	}
+
+	@Override
+	public int size()
+	{
+		return numVariables;
+	}
+
+	@Override
+	public boolean contains( final Object o )
+	{
+		if ( !( o instanceof Integer ) )
+			return false;
+		final int v = ( Integer ) o;
+		return v >= 0 && v < numVariables;
+	}
+
+	@Override
+	public Iterator< Integer > iterator()
+	{
+		return new Iterator< Integer >()
+		{
+			int next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < numVariables;
+			}
+
+			@Override
+			public Integer next()
+			{
+				if ( !hasNext() )
+					throw new NoSuchElementException();
+				return next++;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
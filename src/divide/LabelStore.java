@@ -0,0 +1,72 @@
+package divide;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared global labeling that the local solutions computed by
+ * {@link Algorithm#solve} are committed to.
+ *
+ * Every commit gets a new version. For each variable the store records the
+ * version and owner (the variable whose local solution was committed) of the
+ * commit that last <em>changed</em> its label, and for each owner the version
+ * of its last commit. A committed local solution is still consistent with the
+ * global labeling if no label in its region changed after it was committed.
+ * This replaces keeping a separate local solution for every variable.
+ *
+ * @param <V>
+ *            variable type
+ * @param <R>
+ *            range type
+ */
+public abstract class LabelStore< V, R >
+{
+	/**
+	 * @return the label of {@code v} or {@code null} if {@code v} is not
+	 *         labeled.
+	 */
+	public abstract R get( V v );
+
+	/**
+	 * Set the label of {@code v} without an owner, e.g., to seed the store
+	 * with an initial labeling.
+	 */
+	public abstract void put( V v, R label );
+
+	/**
+	 * Consider {@code owner} committed with the labels currently in the store,
+	 * e.g., for variables that agree with an initial labeling.
+	 */
+	public abstract void markCommitted( V owner );
+
+	/**
+	 * Commit the local solution of {@code owner}.
+	 *
+	 * @return whether any label changed.
+	 */
+	public abstract boolean commit( V owner, Map< V, R > solution );
+
+	/**
+	 * @return whether {@code owner} has been committed and no label in
+	 *         {@code region} changed since.
+	 */
+	public abstract boolean isCurrent( V owner, Set< V > region );
+
+	/**
+	 * @return the owner of the commit that last changed the label of
+	 *         {@code v}, or {@code null} if it was not changed by a commit.
+	 */
+	public abstract V getOwner( V v );
+
+	/**
+	 * @return the version of the commit that last changed the label of
+	 *         {@code v}, 0 if it was set by {@link #put}, or -1 if {@code v}
+	 *         is not labeled.
+	 */
+	public abstract int getVersion( V v );
+
+	/**
+	 * @return read-only view of the labeling.
+	 */
+	public abstract Map< V, R > asMap();
+}
@@ -0,0 +1,184 @@
+package divide;
+
+import graphcut.MaxFlow;
+import graphcut.MaxFlowBackend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+/**
+ * Headless pipeline that restores a stream of binary images.
+ *
+ * Reading, graph construction, maximum flow and writing run in separate
+ * threads connected by bounded queues. Graph construction of an image thus
+ * overlaps with the maximum flow of the previous one and with reading and
+ * writing. A stage that runs ahead blocks once its output queue is full, so
+ * at most a few images per stage are in memory at a time. Images are written
+ * in the order they were read.
+ */
+public class RestorationPipeline
+{
+	/**
+	 * Supplies the images to restore.
+	 */
+	public interface Source
+	{
+		/**
+		 * @return the next image or {@code null} if there are no more images.
+		 */
+		public RandomAccessibleInterval< UnsignedByteType > read() throws Exception;
+	}
+
+	/**
+	 * Receives the restored images.
+	 */
+	public interface Sink
+	{
+		/**
+		 * @param index
+		 *            position of the image in the input, starting at 0.
+		 */
+		public void write( long index, RandomAccessibleInterval< UnsignedByteType > img, Img< UnsignedByteType > restored ) throws Exception;
+	}
+
+	/**
+	 * An image on its way through the pipeline.
+	 */
+	static class Item
+	{
+		final long index;
+
+		final RandomAccessibleInterval< UnsignedByteType > img;
+
+		MaxFlow graph = null;
+
+		Img< UnsignedByteType > restored = null;
+
+		Item( final long index, final RandomAccessibleInterval< UnsignedByteType > img )
+		{
+			this.index = index;
+			this.img = img;
+		}
+	}
+
+	// marks the end of the input
+	static final Item END = new Item( -1, null );
+
+	private final MaxFlowBackend backend;
+
+	private final int capacity;
+
+	public RestorationPipeline()
+	{
+		this( MaxFlowBackend.AUTO, 2 );
+	}
+
+	/**
+	 * @param capacity
+	 *            number of images that may wait between two stages.
+	 */
+	public RestorationPipeline( final MaxFlowBackend backend, final int capacity )
+	{
+		if ( capacity < 1 )
+			throw new IllegalArgumentException( "capacity must be positive" );
+		this.backend = backend;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Restore all images of {@code source} and hand them to {@code sink}.
+	 * Returns when the last image has been written. If a stage fails, the
+	 * other stages are interrupted and the failure is rethrown.
+	 */
+	public void run( final Source source, final Sink sink ) throws InterruptedException, ExecutionException
+	{
+		final BlockingQueue< Item > read = new ArrayBlockingQueue< Item >( capacity );
+		final BlockingQueue< Item > built = new ArrayBlockingQueue< Item >( capacity );
+		final BlockingQueue< Item > solved = new ArrayBlockingQueue< Item >( capacity );
+
+		final List< Callable< Void > > stages = new ArrayList< Callable< Void > >();
+		stages.add( new Callable< Void >()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				long index = 0;
+				for ( RandomAccessibleInterval< UnsignedByteType > img = source.read(); img != null; img = source.read() )
+					read.put( new Item( index++, img ) );
+				read.put( END );
+				return null;
+			}
+		} );
+		stages.add( new Callable< Void >()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				for ( Item item = read.take(); item != END; item = read.take() )
+				{
+					item.graph = BinaryRestoration.createGraph( item.img, backend );
+					built.put( item );
+				}
+				built.put( END );
+				return null;
+			}
+		} );
+		stages.add( new Callable< Void >()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				for ( Item item = built.take(); item != END; item = built.take() )
+				{
+					item.graph.computeMaximumFlow( false, null );
+					item.restored = BinaryRestoration.segmentation( item.img, item.graph );
+					item.graph = null;
+					solved.put( item );
+				}
+				solved.put( END );
+				return null;
+			}
+		} );
+		stages.add( new Callable< Void >()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				for ( Item item = solved.take(); item != END; item = solved.take() )
+					sink.write( item.index, item.img, item.restored );
+				return null;
+			}
+		} );
+
+		final ExecutorService executor = Executors.newFixedThreadPool( stages.size() );
+		final CompletionService< Void > completion = new ExecutorCompletionService< Void >( executor );
+		final List< Future< Void > > futures = new ArrayList< Future< Void > >();
+		try
+		{
+			for ( final Callable< Void > stage : stages )
+				futures.add( completion.submit( stage ) );
+			// the first stage to fail cancels the others
+			for ( int i = 0; i < stages.size(); ++i )
+				completion.take().get();
+		}
+		finally
+		{
+			for ( final Future< Void > future : futures )
+				future.cancel( true );
+			executor.shutdownNow();
+		}
+	}
+}
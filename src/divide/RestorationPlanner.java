@@ -0,0 +1,385 @@
+package divide;
+
+import graphcut.MaxFlowBackend;
+
+import java.util.Map;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Chooses how to restore a binary image: with one global cut, by divide and
+ * conquer, or by divide and conquer on several threads.
+ *
+ * The choice is based on an estimate of the memory each strategy needs, the
+ * available heap, the number of cores and the noise level of the image, i.e.,
+ * the fraction of neighboring pixels that disagree. The global cut is exact
+ * and, whenever it fits into memory, the fastest: divide and conquer solves
+ * many overlapping regions, and the more noise, the larger the regions get.
+ * On very noisy images, divide and conquer takes so much longer that the
+ * global cut is still chosen if it fits into the free heap at all.
+ *
+ * Otherwise divide and conquer is chosen. {@link Solver} keeps a few bytes
+ * per pixel in compact stores and one window graph, about a third of the
+ * global graph. {@link DistributedSolver} keeps boxed labels and kappas in
+ * each block and copies labels along the block boundaries, more than the
+ * global graph, so it is only chosen, given enough cores, if it fits into
+ * memory. The plan warns if no strategy fits.
+ *
+ * The {@link Plan} records the estimates and why the strategy was chosen.
+ */
+public class RestorationPlanner
+{
+	public static enum Strategy
+	{
+		GLOBAL_CUT,         // one maximum flow of the whole image
+		DIVIDE_AND_CONQUER, // Solver on one thread
+		PARALLEL            // DistributedSolver on several threads
+	}
+
+	/**
+	 * Bytes per pixel of a global cut for the node arrays.
+	 */
+	static final long GLOBAL_BYTES_PER_PIXEL = 40;
+
+	/**
+	 * Bytes of a global cut per pixel and dimension: two directed edges.
+	 */
+	static final long GLOBAL_BYTES_PER_DIMENSION = 24;
+
+	/**
+	 * Bytes per pixel of {@link Solver} on a
+	 * {@link DivideAndConquer.BinaryRestorationGraph}: labels and kappas in
+	 * {@link IntLabelStore} and {@link IntKappaMap}, the
+	 * {@link BlockConflictQueue} and the certified labels.
+	 */
+	static final long DIVIDE_AND_CONQUER_BYTES_PER_PIXEL = 32;
+
+	/**
+	 * Bytes per pixel of {@link DistributedSolver}: boxed labels and kappas
+	 * of the blocks.
+	 */
+	static final long PARALLEL_BYTES_PER_PIXEL = 160;
+
+	/**
+	 * Bytes per pixel and dimension of {@link DistributedSolver}, divided by
+	 * the block size: copies of the labels along the block boundaries and the
+	 * messages that carry them.
+	 */
+	static final long PARALLEL_BOUNDARY_BYTES = 4800;
+
+	/**
+	 * Bytes per pixel of a window graph in addition to the global estimate:
+	 * clamps, applied terminal weights and region flags.
+	 */
+	static final long WINDOW_BYTES_PER_PIXEL = 6;
+
+	/**
+	 * Fraction of the available heap a strategy may plan to use.
+	 */
+	static final double HEAP_FRACTION = 0.75;
+
+	/**
+	 * Minimal number of cores to run divide and conquer in parallel. On a
+	 * single core, the rounds of {@link DistributedSolver} take several times
+	 * as long as {@link Solver}.
+	 */
+	static final int PARALLEL_MIN_CORES = 8;
+
+	/**
+	 * Noise level above which divide and conquer needs many local solves with
+	 * growing kappas, seconds to minutes where the global cut takes
+	 * milliseconds.
+	 */
+	static final double HIGH_NOISE = 0.35;
+
+	static final int CERTIFICATE_TILE_SIZE = 32;
+
+	/**
+	 * Size of the window of the graph that each thread of divide and conquer
+	 * updates, see {@link DivideAndConquer.DynamicBinaryRestorationGraph}.
+	 */
+	static final int WINDOW_SIZE = 64;
+
+	static final int MAX_BLOCK_SIZE = 64;
+
+	static final int MIN_BLOCK_SIZE = 16;
+
+	/**
+	 * The chosen strategy with its parameters and the estimates that led to
+	 * it.
+	 */
+	public static class Plan
+	{
+		private final Strategy strategy;
+
+		private final String reason;
+
+		private final MaxFlowBackend backend;
+
+		private final double noise;
+
+		private final long globalBytes;
+
+		private final long divideAndConquerBytes;
+
+		private final long parallelBytes;
+
+		private final long availableBytes;
+
+		private final int numThreads;
+
+		private final int blockSize;
+
+		Plan( final Strategy strategy, final String reason, final MaxFlowBackend backend, final double noise, final long globalBytes, final long divideAndConquerBytes, final long parallelBytes, final long availableBytes, final int numThreads, final int blockSize )
+		{
+			this.strategy = strategy;
+			this.reason = reason;
+			this.backend = backend;
+			this.noise = noise;
+			this.globalBytes = globalBytes;
+			this.divideAndConquerBytes = divideAndConquerBytes;
+			this.parallelBytes = parallelBytes;
+			this.availableBytes = availableBytes;
+			this.numThreads = numThreads;
+			this.blockSize = blockSize;
+		}
+
+		public Strategy getStrategy()
+		{
+			return strategy;
+		}
+
+		/**
+		 * @return why {@link #getStrategy()} was chosen, for humans.
+		 */
+		public String getReason()
+		{
+			return reason;
+		}
+
+		/**
+		 * @return fraction of neighboring pixels that disagree.
+		 */
+		public double getNoise()
+		{
+			return noise;
+		}
+
+		public long getGlobalBytes()
+		{
+			return globalBytes;
+		}
+
+		public long getDivideAndConquerBytes()
+		{
+			return divideAndConquerBytes;
+		}
+
+		public long getParallelBytes()
+		{
+			return parallelBytes;
+		}
+
+		public long getAvailableBytes()
+		{
+			return availableBytes;
+		}
+
+		/**
+		 * @return number of threads, 1 unless {@link Strategy#PARALLEL}.
+		 */
+		public int getNumThreads()
+		{
+			return numThreads;
+		}
+
+		/**
+		 * @return size of the blocks of {@link Strategy#PARALLEL}, 0
+		 *         otherwise.
+		 */
+		public int getBlockSize()
+		{
+			return blockSize;
+		}
+
+		/**
+		 * Restore {@code img} with the chosen strategy.
+		 */
+		public Img< UnsignedByteType > restore( final RandomAccessibleInterval< UnsignedByteType > img )
+		{
+			if ( strategy == Strategy.GLOBAL_CUT )
+				return BinaryRestoration.binaryRestoration( img, backend );
+
+			final DivideAndConquer.BinaryRestorationGraph graph = new DivideAndConquer.DynamicBinaryRestorationGraph( img, backend, BinaryRestoration.BoundaryCondition.FREE, CERTIFICATE_TILE_SIZE, WINDOW_SIZE );
+			final Algorithm.KappaUpdateFunction u = new Algorithm.KappaUpdateFunction()
+			{
+				@Override
+				public final int next( final int kappa )
+				{
+					return kappa + 1;
+				}
+			};
+			final Map< Integer, Integer > solution;
+			if ( strategy == Strategy.PARALLEL )
+				solution = DistributedSolver.solve( graph, 1, u, graph.blockPartition( blockSize ), numThreads );
+			else
+				solution = new Solver< Integer, Integer >( graph, 1, u ).solve().getLabeling();
+
+			final Img< UnsignedByteType > restored = new ArrayImgFactory< UnsignedByteType >().create( img, new UnsignedByteType() );
+			graph.writeSolution( solution, restored );
+			return restored;
+		}
+
+		@Override
+		public String toString()
+		{
+			return strategy + ": " + reason;
+		}
+	}
+
+	private final MaxFlowBackend backend;
+
+	private final long availableBytes;
+
+	private final int numCores;
+
+	/**
+	 * Plan with the free heap and the cores of this JVM at the time of
+	 * planning.
+	 */
+	public RestorationPlanner()
+	{
+		this( MaxFlowBackend.AUTO, -1, -1 );
+	}
+
+	/**
+	 * @param availableBytes
+	 *            heap to plan with, -1 for the free heap at the time of
+	 *            planning.
+	 * @param numCores
+	 *            cores to plan with, -1 for the available processors.
+	 */
+	public RestorationPlanner( final MaxFlowBackend backend, final long availableBytes, final int numCores )
+	{
+		this.backend = backend;
+		this.availableBytes = availableBytes;
+		this.numCores = numCores;
+	}
+
+	public Plan plan( final RandomAccessibleInterval< UnsignedByteType > img )
+	{
+		final int n = img.numDimensions();
+		final long[] dimensions = new long[ n ];
+		img.dimensions( dimensions );
+		final long numPixels = Intervals.numElements( img );
+		final long available = availableBytes >= 0 ? availableBytes : freeHeap();
+		final int cores = numCores > 0 ? numCores : Runtime.getRuntime().availableProcessors();
+		final long budget = ( long ) ( HEAP_FRACTION * available );
+		final double noise = noise( img );
+
+		// at least two blocks per thread to balance the load
+		int blockSize = MAX_BLOCK_SIZE;
+		while ( blockSize > MIN_BLOCK_SIZE && numBlocks( dimensions, blockSize ) < 2 * cores )
+			blockSize /= 2;
+
+		// every thread updates a window graph of its own
+		final long windowBytes = windowBytes( dimensions );
+		final long globalBytes = numPixels * ( GLOBAL_BYTES_PER_PIXEL + n * GLOBAL_BYTES_PER_DIMENSION );
+		final long divideAndConquerBytes = numPixels * DIVIDE_AND_CONQUER_BYTES_PER_PIXEL + windowBytes;
+		final long parallelBytes = numPixels * ( PARALLEL_BYTES_PER_PIXEL + n * PARALLEL_BOUNDARY_BYTES / blockSize ) + cores * windowBytes;
+
+		final String estimates = String.format( "global cut needs ~%s, divide and conquer ~%s, in parallel ~%s, %s available, noise %.2f, %d cores", size( globalBytes ), size( divideAndConquerBytes ), size( parallelBytes ), size( available ), noise, cores );
+
+		if ( globalBytes <= budget )
+			return new Plan( Strategy.GLOBAL_CUT, "the global cut fits into memory and is exact and fastest (" + estimates + ")", backend, noise, globalBytes, divideAndConquerBytes, parallelBytes, available, 1, 0 );
+
+		if ( noise > HIGH_NOISE && globalBytes <= available )
+			return new Plan( Strategy.GLOBAL_CUT, "the image is very noisy, divide and conquer would take many times longer than the global cut, which still fits into the free heap (" + estimates + ")", backend, noise, globalBytes, divideAndConquerBytes, parallelBytes, available, 1, 0 );
+
+		String reason = "the global cut does not fit into memory";
+		if ( cores >= PARALLEL_MIN_CORES && parallelBytes <= budget )
+			return new Plan( Strategy.PARALLEL, reason + ", solving blocks of " + blockSize + " pixels on " + cores + " threads (" + estimates + ")", backend, noise, globalBytes, divideAndConquerBytes, parallelBytes, available, cores, blockSize );
+
+		if ( cores < PARALLEL_MIN_CORES )
+			reason += ", too few cores to solve in parallel";
+		else
+			reason += ", divide and conquer in parallel does not fit either";
+		if ( divideAndConquerBytes > budget )
+			reason += ", divide and conquer on one thread does not fit either, expect to run out of memory";
+		if ( noise > HIGH_NOISE )
+			reason += ", the image is very noisy, expect many local solves";
+		return new Plan( Strategy.DIVIDE_AND_CONQUER, reason + " (" + estimates + ")", backend, noise, globalBytes, divideAndConquerBytes, parallelBytes, available, 1, 0 );
+	}
+
+	/**
+	 * @return fraction of the pairs of neighboring pixels whose binarized
+	 *         values differ, 0 for a single pixel.
+	 */
+	public static double noise( final RandomAccessibleInterval< UnsignedByteType > img )
+	{
+		final int n = img.numDimensions();
+		final long[] dimensions = new long[ n ];
+		img.dimensions( dimensions );
+		final long numPixels = Intervals.numElements( img );
+
+		final RandomAccess< UnsignedByteType > a = img.randomAccess();
+		final long[] min = new long[ n ];
+		img.min( min );
+		final long[] position = new long[ n ];
+		a.setPosition( min );
+		long numPairs = 0;
+		long numDisagreeing = 0;
+		for ( long i = 0; i < numPixels; ++i )
+		{
+			final boolean value = a.get().get() > 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( position[ d ] + 1 >= dimensions[ d ] )
+					continue;
+				a.fwd( d );
+				++numPairs;
+				if ( ( a.get().get() > 0 ) != value )
+					++numDisagreeing;
+				a.bck( d );
+			}
+			BinaryRestoration.fwdIndex( a, position, min, dimensions );
+		}
+		return numPairs == 0 ? 0 : ( double ) numDisagreeing / numPairs;
+	}
+
+	private static long freeHeap()
+	{
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.maxMemory() - ( runtime.totalMemory() - runtime.freeMemory() );
+	}
+
+	/**
+	 * @return bytes of the graph of a window of {@link #WINDOW_SIZE} pixels,
+	 *         or less along dimensions of the image that are smaller.
+	 */
+	private static long windowBytes( final long[] dimensions )
+	{
+		long numPixels = 1;
+		for ( final long dimension : dimensions )
+			numPixels *= Math.min( WINDOW_SIZE, dimension );
+		return numPixels * ( GLOBAL_BYTES_PER_PIXEL + dimensions.length * GLOBAL_BYTES_PER_DIMENSION + WINDOW_BYTES_PER_PIXEL );
+	}
+
+	private static long numBlocks( final long[] dimensions, final int blockSize )
+	{
+		long numBlocks = 1;
+		for ( final long dimension : dimensions )
+			numBlocks *= ( dimension + blockSize - 1 ) / blockSize;
+		return numBlocks;
+	}
+
+	private static String size( final long bytes )
+	{
+		return bytes < 1 << 20 ? ( bytes >> 10 ) + " kB" : String.format( "%.1f MB", bytes / ( double ) ( 1 << 20 ) );
+	}
+}
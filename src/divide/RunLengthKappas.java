@@ -0,0 +1,225 @@
+package divide;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only kappas of the variables <em>0,...,numVariables-1</em>, stored as
+ * runs of equal kappas. Kappas grow in the regions that are hard to solve and
+ * stay at their start value elsewhere, so the number of runs is typically far
+ * smaller than the number of variables.
+ *
+ * A variable without kappa is stored as {@link IntKappaMap#ABSENT} and is not
+ * contained in the map. Lookups search the runs binarily.
+ */
+public class RunLengthKappas extends AbstractMap< Integer, Integer >
+{
+	private final int numVariables;
+
+	// first variable of each run, starts[ 0 ] == 0
+	private final int[] starts;
+
+	private final int[] values;
+
+	private final int size;
+
+	/**
+	 * @param kappas
+	 *            kappas of (some of) the variables, must not be negative.
+	 */
+	public RunLengthKappas( final Map< Integer, Integer > kappas, final int numVariables )
+	{
+		this( dense( kappas, numVariables ), kappas.size() );
+	}
+
+	/**
+	 * @param dense
+	 *            kappa of each variable, {@link IntKappaMap#ABSENT} if it
+	 *            has none.
+	 * @param size
+	 *            number of variables with kappa.
+	 */
+	private RunLengthKappas( final int[] dense, final int size )
+	{
+		final int numVariables = dense.length;
+		int numRuns = 0;
+		for ( int v = 0; v < numVariables; ++v )
+			if ( v == 0 || dense[ v ] != dense[ v - 1 ] )
+				++numRuns;
+
+		this.numVariables = numVariables;
+		starts = new int[ numRuns ];
+		values = new int[ numRuns ];
+		for ( int v = 0, r = -1; v < numVariables; ++v )
+			if ( v == 0 || dense[ v ] != dense[ v - 1 ] )
+			{
+				starts[ ++r ] = v;
+				values[ r ] = dense[ v ];
+			}
+		this.size = size;
+	}
+
+	/**
+	 * Wrap runs as returned by {@link #getStarts()} and {@link #getValues()}.
+	 */
+	RunLengthKappas( final int numVariables, final int[] starts, final int[] values )
+	{
+		this.numVariables = numVariables;
+		this.starts = starts;
+		this.values = values;
+		int s = 0;
+		for ( int r = 0; r < starts.length; ++r )
+			if ( values[ r ] != IntKappaMap.ABSENT )
+				s += runEnd( r ) - starts[ r ];
+		size = s;
+	}
+
+	public int numVariables()
+	{
+		return numVariables;
+	}
+
+	public int numRuns()
+	{
+		return starts.length;
+	}
+
+	/**
+	 * @return the kappa of {@code v}, {@link IntKappaMap#ABSENT} if
+	 *         {@code v} has none.
+	 */
+	public int getKappa( final int v )
+	{
+		final int r = Arrays.binarySearch( starts, v );
+		return values[ r >= 0 ? r : -r - 2 ];
+	}
+
+	int[] getStarts()
+	{
+		return starts;
+	}
+
+	int[] getValues()
+	{
+		return values;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public Integer get( final Object key )
+	{
+		if ( !( key instanceof Integer ) )
+			return null;
+		final int v = ( Integer ) key;
+		if ( v < 0 || v >= numVariables )
+			return null;
+		final int kappa = getKappa( v );
+		return kappa == IntKappaMap.ABSENT ? null : kappa;
+	}
+
+	@Override
+	public boolean containsKey( final Object key )
+	{
+		return get( key ) != null;
+	}
+
+	/**
+	 * Iterates over the variables with kappa in increasing order, run by run.
+	 */
+	@Override
+	public Set< Map.Entry< Integer, Integer > > entrySet()
+	{
+		return new AbstractSet< Map.Entry< Integer, Integer > >()
+		{
+			@Override
+			public int size()
+			{
+				return size;
+			}
+
+			@Override
+			public Iterator< Map.Entry< Integer, Integer > > iterator()
+			{
+				return new Iterator< Map.Entry< Integer, Integer > >()
+				{
+					int run = -1;
+
+					int next = 0;
+
+					int end = 0;
+
+					{
+						advance();
+					}
+
+					// move to the next variable with kappa
+					void advance()
+					{
+						while ( next >= end && ++run < starts.length )
+						{
+							next = starts[ run ];
+							end = values[ run ] == IntKappaMap.ABSENT ? next : runEnd( run );
+						}
+					}
+
+					@Override
+					public boolean hasNext()
+					{
+						return run < starts.length;
+					}
+
+					@Override
+					public Map.Entry< Integer, Integer > next()
+					{
+						if ( !hasNext() )
+							throw new NoSuchElementException();
+						final Map.Entry< Integer, Integer > entry = new SimpleImmutableEntry< Integer, Integer >( next, values[ run ] );
+						++next;
+						advance();
+						return entry;
+					}
+
+					@Override
+					public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	private static int[] dense( final Map< Integer, Integer > kappas, final int numVariables )
+	{
+		if ( kappas instanceof IntKappaMap )
+		{
+			if ( ( ( IntKappaMap ) kappas ).numVariables() != numVariables )
+				throw new IllegalArgumentException( "kappas are for " + ( ( IntKappaMap ) kappas ).numVariables() + " variables, expected " + numVariables );
+			return ( ( IntKappaMap ) kappas ).getKappas();
+		}
+		final int[] dense = new int[ numVariables ];
+		Arrays.fill( dense, IntKappaMap.ABSENT );
+		for ( final Map.Entry< Integer, Integer > entry : kappas.entrySet() )
+		{
+			if ( entry.getValue() < 0 )
+				throw new IllegalArgumentException( "kappa of variable " + entry.getKey() + " must not be negative, got " + entry.getValue() );
+			dense[ entry.getKey() ] = entry.getValue();
+		}
+		return dense;
+	}
+
+	private int runEnd( final int r )
+	{
+		return r + 1 < starts.length ? starts[ r + 1 ] : numVariables;
+	}
+}
@@ -0,0 +1,538 @@
+package divide;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solves a {@link Algorithm.ProblemGraph} by divide and conquer, see
+ * {@link Algorithm#solve}.
+ *
+ * All state of a computation, including the labels certified by
+ * {@link Algorithm.ProblemGraph#certify()}, is local to {@link #solve}. Each
+ * call returns a {@link Result} with the labeling, the final kappas, the
+ * remaining conflicts and some statistics. Several solvers, or several calls
+ * to {@link #solve} of the same solver, can run at the same time if the
+ * methods of the problem graph may be called concurrently, as those of
+ * {@link DivideAndConquer.BinaryRestorationGraph} can. The settings of a
+ * solver must not change while it runs.
+ *
+ * A computation stops early if it is cancelled, runs out of time or reaches
+ * the maximal number of iterations. The result then holds the labeling
+ * committed so far and the conflicts that are still open, from which the
+ * computation can be resumed. For anytime use, a {@link ProgressListener}
+ * receives complete intermediate labelings while the computation runs and
+ * when it stops.
+ *
+ * @param <V>
+ *            variable type
+ * @param <R>
+ *            range type
+ */
+public class Solver< V, R >
+{
+	/**
+	 * Why a computation stopped.
+	 */
+	public static enum Termination
+	{
+		CONVERGED,      // no conflicts are left
+		CANCELLED,      // cancel() was called
+		TIMED_OUT,      // the timeout elapsed or the deadline passed
+		ITERATION_LIMIT // the maximal number of iterations was reached
+	}
+
+	/**
+	 * The outcome of a computation.
+	 */
+	public static class Result< V, R >
+	{
+		private final LabelStore< V, R > store;
+
+		private final Map< V, Integer > kappas;
+
+		private final Queue< V > remainingConflicts;
+
+		private final Termination termination;
+
+		private final long iterations;
+
+		private final long localSolves;
+
+		private final long elapsedNanos;
+
+		Result( final LabelStore< V, R > store, final Map< V, Integer > kappas, final Queue< V > remainingConflicts, final Termination termination, final long iterations, final long localSolves, final long elapsedNanos )
+		{
+			this.store = store;
+			this.kappas = kappas;
+			this.remainingConflicts = remainingConflicts;
+			this.termination = termination;
+			this.iterations = iterations;
+			this.localSolves = localSolves;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @return the labeling, complete only if {@link #isConverged()}.
+		 */
+		public Map< V, R > getLabeling()
+		{
+			return store.asMap();
+		}
+
+		/**
+		 * @return the store that holds the labeling, e.g., to access an
+		 *         {@link IntLabelStore} without copying.
+		 */
+		public LabelStore< V, R > getLabelStore()
+		{
+			return store;
+		}
+
+		public Map< V, Integer > getKappas()
+		{
+			return kappas;
+		}
+
+		/**
+		 * @return the conflicts that were still open, empty if
+		 *         {@link #isConverged()}.
+		 */
+		public Queue< V > getRemainingConflicts()
+		{
+			return remainingConflicts;
+		}
+
+		public Termination getTermination()
+		{
+			return termination;
+		}
+
+		public boolean isConverged()
+		{
+			return termination == Termination.CONVERGED;
+		}
+
+		/**
+		 * @return number of iterations, see
+		 *         {@link Algorithm.Checkpointer#interval()}.
+		 */
+		public long getIterations()
+		{
+			return iterations;
+		}
+
+		/**
+		 * @return number of conflicts that were solved (more than the
+		 *         iterations if batching).
+		 */
+		public long getLocalSolves()
+		{
+			return localSolves;
+		}
+
+		public long getElapsedNanos()
+		{
+			return elapsedNanos;
+		}
+	}
+
+	/**
+	 * Intermediate labeling of a running computation.
+	 */
+	public static class Snapshot< V, R >
+	{
+		private final Map< V, R > labeling;
+
+		private final int remainingConflicts;
+
+		private final long iterations;
+
+		private final long elapsedNanos;
+
+		private final boolean last;
+
+		Snapshot( final Map< V, R > labeling, final int remainingConflicts, final long iterations, final long elapsedNanos, final boolean last )
+		{
+			this.labeling = labeling;
+			this.remainingConflicts = remainingConflicts;
+			this.iterations = iterations;
+			this.elapsedNanos = elapsedNanos;
+			this.last = last;
+		}
+
+		/**
+		 * @return copy of the labeling. Variables that have not been labeled
+		 *         yet carry their label from
+		 *         {@link Algorithm.ProblemGraph#quickLabeling()}.
+		 */
+		public Map< V, R > getLabeling()
+		{
+			return labeling;
+		}
+
+		/**
+		 * @return number of conflicts in the queue, some of which may have
+		 *         been resolved already.
+		 */
+		public int getRemainingConflicts()
+		{
+			return remainingConflicts;
+		}
+
+		public long getIterations()
+		{
+			return iterations;
+		}
+
+		public long getElapsedNanos()
+		{
+			return elapsedNanos;
+		}
+
+		/**
+		 * @return whether the computation stopped after this snapshot.
+		 */
+		public boolean isLast()
+		{
+			return last;
+		}
+	}
+
+	/**
+	 * Receives a {@link Snapshot} every {@link #interval()} iterations and
+	 * when the computation stops.
+	 */
+	public interface ProgressListener< V, R >
+	{
+		/**
+		 * @return number of iterations between snapshots, must be positive.
+		 */
+		public int interval();
+
+		public void progress( Snapshot< V, R > snapshot );
+	}
+
+	/**
+	 * {@link ProgressListener} that keeps the latest snapshot, to be polled
+	 * from another thread.
+	 */
+	public static class LatestSnapshot< V, R > implements ProgressListener< V, R >
+	{
+		private final int interval;
+
+		private volatile Snapshot< V, R > latest = null;
+
+		public LatestSnapshot( final int interval )
+		{
+			if ( interval < 1 )
+				throw new IllegalArgumentException( "snapshot interval must be positive" );
+			this.interval = interval;
+		}
+
+		@Override
+		public int interval()
+		{
+			return interval;
+		}
+
+		@Override
+		public void progress( final Snapshot< V, R > snapshot )
+		{
+			latest = snapshot;
+		}
+
+		/**
+		 * @return the latest snapshot or {@code null} if there was none yet.
+		 */
+		public Snapshot< V, R > get()
+		{
+			return latest;
+		}
+	}
+
+	private final Algorithm.ProblemGraph< V, R > problem;
+
+	private final int kappaStart;
+
+	private final Algorithm.KappaUpdateFunction u;
+
+	private Algorithm.Checkpointer< V, R > checkpointer = null;
+
+	private int batchSize = 1;
+
+	private long maxIterations = Long.MAX_VALUE;
+
+	private long timeoutNanos = Long.MAX_VALUE;
+
+	// absolute, in System.nanoTime()
+	private long deadline = 0;
+
+	private boolean hasDeadline = false;
+
+	private ProgressListener< V, R > listener = null;
+
+	// incremented by cancel(), a running computation stops if it changes
+	private final AtomicInteger cancellations = new AtomicInteger();
+
+	public Solver( final Algorithm.ProblemGraph< V, R > problem, final int kappaStart, final Algorithm.KappaUpdateFunction u )
+	{
+		this.problem = problem;
+		this.kappaStart = kappaStart;
+		this.u = u;
+	}
+
+	/**
+	 * @param checkpointer
+	 *            receives the solver state periodically, may be {@code null}.
+	 *            Checkpoints are taken between iterations.
+	 */
+	public void setCheckpointer( final Algorithm.Checkpointer< V, R > checkpointer )
+	{
+		if ( checkpointer != null && checkpointer.interval() < 1 )
+			throw new IllegalArgumentException( "checkpoint interval must be positive, got " + checkpointer.interval() );
+		this.checkpointer = checkpointer;
+	}
+
+	/**
+	 * @param batchSize
+	 *            maximum number of conflicts that are solved together, see
+	 *            {@link Algorithm#solve(Algorithm.ProblemGraph, int, Algorithm.KappaUpdateFunction, int)}.
+	 */
+	public void setBatchSize( final int batchSize )
+	{
+		if ( batchSize < 1 )
+			throw new IllegalArgumentException( "batchSize must be positive" );
+		this.batchSize = batchSize;
+	}
+
+	public void setMaxIterations( final long maxIterations )
+	{
+		if ( maxIterations < 0 )
+			throw new IllegalArgumentException( "maxIterations must not be negative" );
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Limit the running time of each computation. The timeout is checked
+	 * between iterations, so a computation may overrun it by one local solve.
+	 */
+	public void setTimeout( final long timeout, final TimeUnit unit )
+	{
+		if ( timeout < 0 )
+			throw new IllegalArgumentException( "timeout must not be negative" );
+		this.timeoutNanos = unit.toNanos( timeout );
+	}
+
+	/**
+	 * Stop every computation once {@link System#nanoTime()} passes
+	 * {@code deadline}, in addition to the timeout. Like the timeout, the
+	 * deadline is checked between iterations.
+	 */
+	public void setDeadline( final long deadline )
+	{
+		this.deadline = deadline;
+		this.hasDeadline = true;
+	}
+
+	/**
+	 * @param listener
+	 *            receives intermediate labelings, may be {@code null}.
+	 */
+	public void setProgressListener( final ProgressListener< V, R > listener )
+	{
+		if ( listener != null && listener.interval() < 1 )
+			throw new IllegalArgumentException( "snapshot interval must be positive, got " + listener.interval() );
+		this.listener = listener;
+	}
+
+	/**
+	 * Stop all computations of this solver that are running. They return
+	 * after their current iteration. Computations that are started later are
+	 * not affected. May be called from any thread.
+	 */
+	public void cancel()
+	{
+		cancellations.incrementAndGet();
+	}
+
+	public Result< V, R > solve()
+	{
+		return solve( Collections.< V, R >emptyMap(), problem.allVariables(), Collections.< V, Integer >emptyMap() );
+	}
+
+	/**
+	 * Solve starting from an initial global labeling, initial conflicts and
+	 * initial kappas, e.g., the state stored in a checkpoint or the result of
+	 * a computation that stopped early.
+	 *
+	 * @param initialSolution
+	 *            initial global labeling (may be partial).
+	 * @param initialConflicts
+	 *            variables that have to be solved.
+	 * @param initialKappas
+	 *            initial kappa for each variable. Variables that are missing
+	 *            start at {@code kappaStart}.
+	 */
+	public Result< V, R > solve( final Map< V, R > initialSolution, final Collection< V > initialConflicts, final Map< V, Integer > initialKappas )
+	{
+		final long start = System.nanoTime();
+		final int cancellation = cancellations.get();
+
+		final Set< V > variables = problem.allVariables();
+		final Map< V, Integer > kappas = problem.createKappaMap();
+		for ( final V v : variables )
+			kappas.put( v, kappaStart );
+		kappas.putAll( initialKappas );
+		final LabelStore< V, R > store = problem.createLabelStore();
+
+		// seed the global labeling. Variables that are not in conflict are
+		// considered committed with the initial labeling.
+		if ( !initialSolution.isEmpty() )
+		{
+			for ( final Entry< V, R > entry : initialSolution.entrySet() )
+				store.put( entry.getKey(), entry.getValue() );
+			final Set< V > initialConflictSet = new HashSet< V >( initialConflicts );
+			for ( final V v : variables )
+				if ( !initialConflictSet.contains( v ) )
+					store.markCommitted( v );
+		}
+
+		// certified variables are fixed and never in conflict
+		final Map< V, R > certified = problem.certify();
+		for ( final Entry< V, R > entry : certified.entrySet() )
+			store.put( entry.getKey(), entry.getValue() );
+
+		final Queue< V > conflicts = problem.createConflictQueue();
+		for ( final V v : initialConflicts )
+			if ( !certified.containsKey( v ) )
+				conflicts.add( v );
+
+		// labels of unsolved variables in snapshots, computed for the first
+		// snapshot
+		LabelStore< V, R > quickLabels = null;
+
+		// conflicts of the current batch and their neighborhoods
+		final Map< V, Set< V > > batch = new LinkedHashMap< V, Set< V > >();
+
+		Termination termination = Termination.CONVERGED;
+		long iteration = 0;
+		long localSolves = 0;
+		while ( !conflicts.isEmpty() )
+		{
+			if ( cancellations.get() != cancellation )
+			{
+				termination = Termination.CANCELLED;
+				break;
+			}
+			final long now = System.nanoTime();
+			if ( now - start > timeoutNanos || hasDeadline && now - deadline > 0 )
+			{
+				termination = Termination.TIMED_OUT;
+				break;
+			}
+			if ( iteration >= maxIterations )
+			{
+				termination = Termination.ITERATION_LIMIT;
+				break;
+			}
+
+			++iteration;
+			if ( checkpointer != null && iteration % checkpointer.interval() == 0 )
+				checkpointer.checkpoint( conflicts, kappas, store.asMap() );
+			if ( listener != null && iteration % listener.interval() == 0 )
+			{
+				if ( quickLabels == null )
+					quickLabels = quickLabels();
+				listener.progress( snapshot( store, quickLabels, conflicts, iteration, start, false ) );
+			}
+
+			batch.clear();
+			final Set< V > region = new HashSet< V >();
+			while ( batch.size() < batchSize && !conflicts.isEmpty() )
+			{
+				final V v = conflicts.remove();
+
+				final Set< V > gammaV = problem.gamma( Collections.singleton( v ) );
+
+				// check whether the conflict still persists
+				if ( batch.containsKey( v ) || store.isCurrent( v, gammaV ) )
+					continue;
+
+				batch.put( v, gammaV );
+				region.addAll( problem.gamma( kappas.get( v ), gammaV ) );
+			}
+
+			if ( batch.isEmpty() )
+				continue;
+
+			final Map< V, R > solution = problem.solve( region, store.asMap(), certified );
+
+			for ( final Entry< V, Set< V > > entry : batch.entrySet() )
+			{
+				final V v = entry.getKey();
+				final Set< V > gammaV = entry.getValue();
+				final int kappa = kappas.get( v );
+
+				final Map< V, R > sigma = problem.restrict( solution, gammaV );
+				sigma.keySet().removeAll( certified.keySet() );
+
+				if ( store.commit( v, sigma ) )
+					for ( final V vprime : gammaV )
+						if ( vprime.equals( v ) || certified.containsKey( vprime ) )
+							continue;
+						else if ( !store.isCurrent( vprime, problem.gamma( Collections.singleton( vprime ) ) ) )
+						{
+							conflicts.add( vprime );
+//							kappas.put( vprime, Math.max( kappa, kappas.get( vprime ) ) );
+						}
+				kappas.put( v, u.next( kappa ) );
+				++localSolves;
+			}
+		}
+
+		if ( listener != null )
+		{
+			if ( quickLabels == null )
+				quickLabels = quickLabels();
+			listener.progress( snapshot( store, quickLabels, conflicts, iteration, start, true ) );
+		}
+
+		return new Result< V, R >( store, kappas, conflicts, termination, iteration, localSolves, System.nanoTime() - start );
+	}
+
+	/**
+	 * Copy the labeling into a new store, so that snapshots use the same
+	 * compact representation, filling in unlabeled variables from
+	 * {@code quickLabels}.
+	 */
+	private Snapshot< V, R > snapshot( final LabelStore< V, R > store, final LabelStore< V, R > quickLabels, final Queue< V > conflicts, final long iteration, final long start, final boolean last )
+	{
+		final LabelStore< V, R > copy = problem.createLabelStore();
+		final Map< V, R > labeling = store.asMap();
+		if ( labeling.size() < problem.allVariables().size() )
+			for ( final Entry< V, R > entry : quickLabels.asMap().entrySet() )
+				copy.put( entry.getKey(), entry.getValue() );
+		for ( final Entry< V, R > entry : labeling.entrySet() )
+			copy.put( entry.getKey(), entry.getValue() );
+		return new Snapshot< V, R >( copy.asMap(), conflicts.size(), iteration, System.nanoTime() - start, last );
+	}
+
+	/**
+	 * The quick labeling of the problem in a compact store.
+	 */
+	private LabelStore< V, R > quickLabels()
+	{
+		final LabelStore< V, R > quickLabels = problem.createLabelStore();
+		for ( final Entry< V, R > entry : problem.quickLabeling().entrySet() )
+			quickLabels.put( entry.getKey(), entry.getValue() );
+		return quickLabels;
+	}
+}
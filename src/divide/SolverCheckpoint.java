@@ -0,0 +1,355 @@
+package divide;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes and reads checkpoints of {@link Algorithm#solve} runs on binary
+ * labeling problems whose variables are the indices
+ * <em>0,...,numVariables-1</em>.
+ *
+ * The file consists of a header (magic, version, number of variables, number
+ * of conflicts) followed by the labeling as two packed bit sets (labeled
+ * variables and their labels), the kappas and the conflict queue as an
+ * <code>int</code> array. Version 1 stores the kappas as a <code>short</code>
+ * array. Version 2 starts the kappas with their encoding: either the
+ * <code>short</code> array or, if that is smaller, the number of runs followed
+ * by the first variable and kappa of each run. Versions 1 and 2 store
+ * variables without kappa as kappa 0, version 3 as
+ * {@link IntKappaMap#ABSENT}, so that kappa 0 is kept. Files are written to a
+ * temporary file first and atomically moved over the previous checkpoint, so
+ * there is a complete checkpoint on disk at any time. Mappings are released
+ * before a file is replaced.
+ *
+ * The state read from a checkpoint keeps the labeling and kappas in the same
+ * compact form, see {@link BitLabeling} and {@link RunLengthKappas}.
+ */
+public class SolverCheckpoint implements Algorithm.Checkpointer< Integer, Integer >
+{
+	static final int MAGIC = 0x44434b50; // "DCKP"
+
+	static final int VERSION = 3;
+
+	static final int HEADER_BYTES = 4 * 4;
+
+	// encodings of the kappas in version 2
+	static final int KAPPAS_DENSE = 0;
+
+	static final int KAPPAS_RUNS = 1;
+
+	private final File file;
+
+	private final int numVariables;
+
+	private final int interval;
+
+	/**
+	 * @param file
+	 *            the checkpoint file.
+	 * @param numVariables
+	 *            number of variables of the problem.
+	 * @param interval
+	 *            number of iterations between checkpoints.
+	 */
+	public SolverCheckpoint( final File file, final int numVariables, final int interval )
+	{
+		if ( interval < 1 )
+			throw new IllegalArgumentException( "checkpoint interval must be positive" );
+		this.file = file;
+		this.numVariables = numVariables;
+		this.interval = interval;
+	}
+
+	@Override
+	public int interval()
+	{
+		return interval;
+	}
+
+	@Override
+	public void checkpoint( final Collection< Integer > conflicts, final Map< Integer, Integer > kappas, final Map< Integer, Integer > labeling )
+	{
+		try
+		{
+			write( file, numVariables, conflicts, kappas, labeling );
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( "could not write checkpoint " + file, e );
+		}
+	}
+
+	/**
+	 * The solver state stored in a checkpoint.
+	 */
+	public static class State
+	{
+		final int numVariables;
+
+		final Map< Integer, Integer > labeling;
+
+		final Map< Integer, Integer > kappas;
+
+		final int[] conflicts;
+
+		State( final int numVariables, final Map< Integer, Integer > labeling, final Map< Integer, Integer > kappas, final int[] conflicts )
+		{
+			this.numVariables = numVariables;
+			this.labeling = labeling;
+			this.kappas = kappas;
+			this.conflicts = conflicts;
+		}
+
+		public int getNumVariables()
+		{
+			return numVariables;
+		}
+
+		public Map< Integer, Integer > getLabeling()
+		{
+			return labeling;
+		}
+
+		public Map< Integer, Integer > getKappas()
+		{
+			return kappas;
+		}
+
+		public int[] getConflicts()
+		{
+			return conflicts;
+		}
+
+		public List< Integer > getConflictList()
+		{
+			final ArrayList< Integer > list = new ArrayList< Integer >( conflicts.length );
+			for ( final int v : conflicts )
+				list.add( v );
+			return list;
+		}
+	}
+
+	/**
+	 * Resume a run from the checkpoint stored in {@code file}.
+	 *
+	 * @param checkpointer
+	 *            receives the solver state periodically, may be {@code null}.
+	 */
+	public static Map< Integer, Integer > resume( final Algorithm.ProblemGraph< Integer, Integer > problem, final int kappaStart, final Algorithm.KappaUpdateFunction u, final File file, final Algorithm.Checkpointer< Integer, Integer > checkpointer ) throws IOException
+	{
+		final State state = read( file );
+		return Algorithm.solve( problem, kappaStart, u, state.getLabeling(), state.getConflictList(), state.getKappas(), checkpointer );
+	}
+
+	/**
+	 * Write the outcome of a computation, e.g., to resume it if it stopped
+	 * early.
+	 */
+	public static void write( final File file, final int numVariables, final Solver.Result< Integer, Integer > result ) throws IOException
+	{
+		write( file, numVariables, result.getRemainingConflicts(), result.getKappas(), result.getLabeling() );
+	}
+
+	public static void write( final File file, final int numVariables, final Collection< Integer > conflicts, final Map< Integer, Integer > kappas, final Map< Integer, Integer > labeling ) throws IOException
+	{
+		final BitLabeling bits = labeling instanceof BitLabeling ? ( BitLabeling ) labeling : BitLabeling.copyOf( labeling, numVariables );
+		final RunLengthKappas runs = kappas instanceof RunLengthKappas ? ( RunLengthKappas ) kappas : new RunLengthKappas( kappas, numVariables );
+		final int numWords = BitLabeling.numWords( numVariables );
+		final int numConflicts = conflicts.size();
+		final int numRuns = runs.numRuns();
+		int maxKappa = 0;
+		for ( final int kappa : runs.getValues() )
+			maxKappa = Math.max( maxKappa, kappa );
+		final boolean dense = maxKappa <= Short.MAX_VALUE && 2L * numVariables <= 4L + 8L * numRuns;
+		final long kappaBytes = 4L + ( dense ? 2L * numVariables : 4L + 8L * numRuns );
+		final long size = HEADER_BYTES + 2L * 8 * numWords + kappaBytes + 4L * numConflicts;
+
+		final File tmp = new File( file.getPath() + ".tmp" );
+		final RandomAccessFile raf = new RandomAccessFile( tmp, "rw" );
+		try
+		{
+			raf.setLength( size );
+			final MappedByteBuffer buffer = raf.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, size );
+			buffer.putInt( MAGIC );
+			buffer.putInt( VERSION );
+			buffer.putInt( numVariables );
+			buffer.putInt( numConflicts );
+			for ( final long word : bits.getLabeledWords() )
+				buffer.putLong( word );
+			for ( final long word : bits.getLabelWords() )
+				buffer.putLong( word );
+			if ( dense )
+			{
+				buffer.putInt( KAPPAS_DENSE );
+				for ( int r = 0; r < numRuns; ++r )
+				{
+					final int end = r + 1 < numRuns ? runs.getStarts()[ r + 1 ] : numVariables;
+					for ( int v = runs.getStarts()[ r ]; v < end; ++v )
+						buffer.putShort( ( short ) runs.getValues()[ r ] );
+				}
+			}
+			else
+			{
+				buffer.putInt( KAPPAS_RUNS );
+				buffer.putInt( numRuns );
+				for ( int r = 0; r < numRuns; ++r )
+				{
+					buffer.putInt( runs.getStarts()[ r ] );
+					buffer.putInt( runs.getValues()[ r ] );
+				}
+			}
+			for ( final int v : conflicts )
+				buffer.putInt( v );
+			buffer.force();
+			unmap( buffer );
+		}
+		finally
+		{
+			raf.close();
+		}
+
+		Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+	}
+
+	public static State read( final File file ) throws IOException
+	{
+		final RandomAccessFile raf = new RandomAccessFile( file, "r" );
+		try
+		{
+			final MappedByteBuffer buffer = raf.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, raf.length() );
+			if ( buffer.getInt() != MAGIC )
+				throw new IOException( file + " is not a checkpoint file" );
+			final int version = buffer.getInt();
+			if ( version < 1 || version > VERSION )
+				throw new IOException( "unsupported checkpoint version " + version );
+			final int numVariables = buffer.getInt();
+			final int numConflicts = buffer.getInt();
+			final int numWords = BitLabeling.numWords( numVariables );
+
+			final long[] labeled = new long[ numWords ];
+			final long[] labels = new long[ numWords ];
+			buffer.asLongBuffer().get( labeled );
+			buffer.position( buffer.position() + 8 * numWords );
+			buffer.asLongBuffer().get( labels );
+			buffer.position( buffer.position() + 8 * numWords );
+			final BitLabeling labeling = new BitLabeling( numVariables, labeled, labels );
+
+			// variables without kappa are stored as 0 before version 3
+			final int absent = version < 3 ? 0 : IntKappaMap.ABSENT;
+			final RunLengthKappas kappas;
+			final int encoding = version == 1 ? KAPPAS_DENSE : buffer.getInt();
+			if ( encoding == KAPPAS_DENSE )
+				kappas = readDenseKappas( buffer, numVariables, absent );
+			else if ( encoding == KAPPAS_RUNS )
+			{
+				final int numRuns = buffer.getInt();
+				final int[] starts = new int[ numRuns ];
+				final int[] values = new int[ numRuns ];
+				for ( int r = 0; r < numRuns; ++r )
+				{
+					starts[ r ] = buffer.getInt();
+					final int kappa = buffer.getInt();
+					values[ r ] = kappa == absent ? IntKappaMap.ABSENT : kappa;
+				}
+				kappas = new RunLengthKappas( numVariables, starts, values );
+			}
+			else
+				throw new IOException( "unsupported kappa encoding " + encoding );
+
+			final int[] conflicts = new int[ numConflicts ];
+			buffer.asIntBuffer().get( conflicts );
+
+			// everything is copied, release the file to be replaced by the
+			// next checkpoint
+			unmap( buffer );
+			return new State( numVariables, labeling, kappas, conflicts );
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Decode kappas stored as one <code>short</code> per variable straight
+	 * into runs.
+	 *
+	 * @param absent
+	 *            stored kappa of variables without kappa.
+	 */
+	private static RunLengthKappas readDenseKappas( final MappedByteBuffer buffer, final int numVariables, final int absent )
+	{
+		int[] starts = new int[ 16 ];
+		int[] values = new int[ 16 ];
+		int numRuns = 0;
+		for ( int v = 0; v < numVariables; ++v )
+		{
+			int kappa = buffer.getShort();
+			if ( kappa == absent )
+				kappa = IntKappaMap.ABSENT;
+			if ( numRuns > 0 && values[ numRuns - 1 ] == kappa )
+				continue;
+			if ( numRuns == starts.length )
+			{
+				starts = Arrays.copyOf( starts, 2 * numRuns );
+				values = Arrays.copyOf( values, 2 * numRuns );
+			}
+			starts[ numRuns ] = v;
+			values[ numRuns ] = kappa;
+			++numRuns;
+		}
+		return new RunLengthKappas( numVariables, Arrays.copyOf( starts, numRuns ), Arrays.copyOf( values, numRuns ) );
+	}
+
+	/**
+	 * Release the mapping of {@code buffer} now instead of when it is garbage
+	 * collected: a mapped file cannot be replaced on Windows. The buffer must
+	 * not be used afterwards. If the JVM offers no way to unmap, the mapping
+	 * is left to the garbage collector.
+	 */
+	private static void unmap( final MappedByteBuffer buffer )
+	{
+		try
+		{
+			// Java 9 and later
+			final Class< ? > unsafeClass = Class.forName( "sun.misc.Unsafe" );
+			final Method invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+			final Field theUnsafe = unsafeClass.getDeclaredField( "theUnsafe" );
+			theUnsafe.setAccessible( true );
+			invokeCleaner.invoke( theUnsafe.get( null ), buffer );
+		}
+		catch ( final NoSuchMethodException e )
+		{
+			// Java 8 and earlier
+			try
+			{
+				final Method cleanerMethod = buffer.getClass().getMethod( "cleaner" );
+				cleanerMethod.setAccessible( true );
+				final Object cleaner = cleanerMethod.invoke( buffer );
+				if ( cleaner != null )
+					cleaner.getClass().getMethod( "clean" ).invoke( cleaner );
+			}
+			catch ( final Exception f )
+			{
+				// left to the garbage collector
+			}
+		}
+		catch ( final Exception e )
+		{
+			// left to the garbage collector
+		}
+	}
+}
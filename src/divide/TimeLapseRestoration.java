@@ -0,0 +1,146 @@
+package divide;
+
+import graphcut.GraphCut;
+import graphcut.GraphCut.Terminal;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Streaming binary restoration of a time-lapse, one frame at a time.
+ *
+ * Each frame is coupled to the restored previous frame by a Potts term of
+ * weight {@code temporalWeight} between corresponding pixels. With the
+ * previous frame fixed, this temporal term becomes part of the unary terms,
+ * so the spatial graph is the same for every frame. It is built once, and for
+ * every new frame only the terminal weights of pixels whose unary terms
+ * changed are updated and the max-flow is recomputed reusing the search trees
+ * of the previous frame. Every frame is emitted as soon as it is pushed, and
+ * memory does not grow with the length of the series.
+ */
+public class TimeLapseRestoration
+{
+	static final float pottsWeight = BinaryRestoration.pottsWeight;
+
+	private final float temporalWeight;
+
+	private final int n;
+
+	private final long[] dimensions;
+
+	private final int numNodes;
+
+	private final GraphCut graphCut;
+
+	// unary capacity (source - sink) that is currently set for each node
+	private final float[] unaries;
+
+	// labels of the previous frame, 0 (foreground) or 1 (background)
+	private final byte[] previousLabels;
+
+	private int numFrames = 0;
+
+	/**
+	 * @param frameInterval
+	 *            interval of the frames
+	 * @param temporalWeight
+	 *            weight of the Potts term between consecutive frames
+	 */
+	public TimeLapseRestoration( final Interval frameInterval, final float temporalWeight )
+	{
+		this.temporalWeight = temporalWeight;
+		n = frameInterval.numDimensions();
+		dimensions = new long[ n ];
+		frameInterval.dimensions( dimensions );
+		numNodes = ( int ) Intervals.numElements( frameInterval );
+
+		graphCut = new GraphCut( numNodes, ( int ) BinaryRestoration.numEdges( dimensions ) );
+		unaries = new float[ numNodes ];
+		previousLabels = new byte[ numNodes ];
+
+		BinaryRestoration.setEdgeWeights( graphCut, dimensions );
+	}
+
+	/**
+	 * Restore the next frame into a new image.
+	 *
+	 * @return the restored frame (0 for foreground, 255 for background).
+	 */
+	public Img< UnsignedByteType > restore( final RandomAccessibleInterval< UnsignedByteType > frame )
+	{
+		final UnsignedByteType type = new UnsignedByteType();
+		final ArrayImgFactory< UnsignedByteType > factory = new ArrayImgFactory< UnsignedByteType >();
+		final Img< UnsignedByteType > restored = factory.create( dimensions, type );
+		restore( frame, restored );
+		return restored;
+	}
+
+	/**
+	 * Restore the next frame into {@code target} (0 for foreground, 255 for
+	 * background), which must have the dimensions of the frames. The same
+	 * target can be passed for every frame once the previous result has been
+	 * consumed, so that no image is allocated per frame.
+	 */
+	public void restore( final RandomAccessibleInterval< UnsignedByteType > frame, final RandomAccessibleInterval< UnsignedByteType > target )
+	{
+		for ( int d = 0; d < n; ++d )
+			if ( frame.dimension( d ) != dimensions[ d ] || target.dimension( d ) != dimensions[ d ] )
+				throw new IllegalArgumentException( "frame or target dimensions differ from the first frame" );
+
+		final boolean reuseTrees = numFrames > 0;
+
+		// update terminal weights
+		final RandomAccess< UnsignedByteType > a = frame.randomAccess();
+		final long[] min = new long[ n ];
+		frame.min( min );
+		final long[] position = new long[ n ];
+		a.setPosition( min );
+		for ( int nodeNum = 0; nodeNum < numNodes; ++nodeNum )
+		{
+			final int Ipo = ( a.get().get() <= 0 ) ? 0 : 1;
+			BinaryRestoration.fwdIndex( a, position, min, dimensions );
+			float source = 1 - Ipo;
+			float sink = Ipo;
+			if ( reuseTrees )
+			{
+				if ( previousLabels[ nodeNum ] == 0 )
+					source += temporalWeight;
+				else
+					sink += temporalWeight;
+			}
+
+			// only the difference of source and sink matters for the cut
+			final float delta = ( source - sink ) - unaries[ nodeNum ];
+			if ( delta != 0 )
+			{
+				if ( delta > 0 )
+					graphCut.setTerminalWeights( nodeNum, delta, 0 );
+				else
+					graphCut.setTerminalWeights( nodeNum, 0, -delta );
+				unaries[ nodeNum ] = source - sink;
+				if ( reuseTrees )
+					graphCut.markNode( nodeNum );
+			}
+		}
+
+		graphCut.computeMaximumFlow( reuseTrees, null );
+		++numFrames;
+
+		for ( int nodeNum = 0; nodeNum < numNodes; ++nodeNum )
+			previousLabels[ nodeNum ] = ( byte ) ( graphCut.getTerminal( nodeNum ) == Terminal.FOREGROUND ? 0 : 1 );
+		BinaryRestoration.writeSegmentation( graphCut, target );
+	}
+
+	/**
+	 * @return number of frames restored so far.
+	 */
+	public int numFrames()
+	{
+		return numFrames;
+	}
+}
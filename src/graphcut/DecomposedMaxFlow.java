@@ -0,0 +1,540 @@
+package graphcut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Max-flow/min-cut that first removes the nodes whose segmentation is forced
+ * by their terminal weights, and then solves the connected components of the
+ * remaining graph independently and in parallel.
+ *
+ * A node whose capacity from the source exceeds the total capacity of its
+ * outgoing edges is in the foreground of every minimum cut (and, symmetrically,
+ * a node whose capacity to the sink exceeds the total capacity of its incoming
+ * edges is in the background of every minimum cut). Such a node is removed and
+ * its edges are folded into the terminal weights of its neighbors, which may
+ * force these in turn. The segmentation and the flow are the same as the ones
+ * of {@link GraphCut} (for non-integral capacities up to rounding, which may
+ * resolve ties between minimum cuts differently).
+ *
+ * This pays off when the terminal weights dominate the edge weights for many
+ * nodes. Otherwise the graph stays in one piece, and copying it makes this
+ * slower than using {@link GraphCut} directly.
+ */
+public class DecomposedMaxFlow implements MaxFlow {
+
+	// labels of the nodes during pruning
+	private static final byte UNDECIDED  = 0;
+	private static final byte FOREGROUND = 1;
+	private static final byte BACKGROUND = 2;
+
+	// local index of undecided nodes before they are assigned to a component
+	private static final int UNVISITED = -2;
+
+	private final int numNodes;
+	private final int numEdges;
+
+	// the implementation used for the components, never AUTO or DECOMPOSED
+	private final MaxFlowBackend backend;
+
+	private final int numThreads;
+
+	// threads that solve the components, created on first use and kept for
+	// later computations. Idle threads time out, so that no shutdown is
+	// needed.
+	private ThreadPoolExecutor executor;
+
+	// counter for initialisation of edges
+	private int edgeNum;
+
+	// the flow that is known from setting the terminal weights
+	private float terminalFlow;
+
+	///////////
+	// graph //
+	///////////
+
+	// the residual capacity of each node to the sink (<0) or from the source
+	// (>0), as set by setTerminalWeights
+	private final float[] terminalCapacities;
+
+	// first outgoing edge of each node
+	private final int[] firstOutgoings;
+
+	// edges are allocated in pairs, the sister of edge e is e^1
+	private final int[] heads;
+	private final int[] nextEdges;
+	private final float[] edgeCapacities;
+
+	///////////////////////////////
+	// state of the computation //
+	///////////////////////////////
+
+	// terminal capacities with the edges of decided nodes folded in
+	private final float[] capacities;
+
+	private final byte[] labels;
+
+	// nodes that may be decided by pruning
+	private final IntList candidates;
+
+	// nodes of all components, one after the other, and the index of each
+	// node within its component (Graph.NONE for decided nodes)
+	private final int[] componentNodes;
+	private final int[] localIndices;
+
+	// start of each component in componentNodes, plus the end of the last one
+	private final IntList componentStarts;
+
+	// the segmentation of the last computation
+	private final boolean[] foreground;
+
+	// nodes that changed their segmentation in the last computation
+	private final IntList changedList;
+
+	private int numComponents;
+
+	private int maxflowIteration;
+
+	/**
+	 * Allocates the memory needed for the given number of nodes and edges.
+	 * The components are solved with Boykov-Kolmogorov on as many threads as
+	 * there are processors.
+	 *
+	 * @param numNodes The number of nodes that should be created.
+	 * @param numEdges The number of edges that you can add. A directed edge and its
+	 *                 counterpart (i.e., the directed edge in the other
+	 *                 direction) count as one edge.
+	 */
+	public DecomposedMaxFlow(final int numNodes, final int numEdges) {
+
+		this(numNodes, numEdges, MaxFlowBackend.BOYKOV_KOLMOGOROV, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Allocates the memory needed for the given number of nodes and edges.
+	 *
+	 * @param numNodes   The number of nodes that should be created.
+	 * @param numEdges   The number of edges that you can add.
+	 * @param backend    The max-flow implementation for the components,
+	 *                   {@link MaxFlowBackend#AUTO} is resolved for the
+	 *                   whole graph.
+	 * @param numThreads The number of threads to solve the components on.
+	 * @throws IllegalArgumentException if <tt>backend</tt> is
+	 *                                  {@link MaxFlowBackend#DECOMPOSED}
+	 */
+	public DecomposedMaxFlow(final int numNodes, final int numEdges, final MaxFlowBackend backend, final int numThreads) {
+
+		if (backend == MaxFlowBackend.DECOMPOSED)
+			throw new IllegalArgumentException("components cannot be decomposed again");
+
+		this.numNodes   = numNodes;
+		this.numEdges   = numEdges;
+		this.backend    = backend.resolve(numNodes, numEdges);
+		this.numThreads = Math.max(numThreads, 1);
+
+		terminalCapacities = new float[numNodes];
+		firstOutgoings     = new int[numNodes];
+		heads              = new int[2*numEdges];
+		nextEdges          = new int[2*numEdges];
+		edgeCapacities     = new float[2*numEdges];
+		capacities         = new float[numNodes];
+		labels             = new byte[numNodes];
+		candidates         = new IntList(numNodes);
+		componentNodes     = new int[numNodes];
+		localIndices       = new int[numNodes];
+		foreground         = new boolean[numNodes];
+		changedList        = new IntList();
+		componentStarts    = new IntList();
+
+		for (int i = 0; i < numNodes; i++)
+			firstOutgoings[i] = Graph.NONE;
+	}
+
+	@Override
+	public void setTerminalWeights(final int node, float source, float sink) {
+
+		final float delta = terminalCapacities[node];
+
+		if (delta > 0)
+			source += delta;
+		else
+			sink   -= delta;
+
+		terminalFlow += (source < sink) ? source : sink;
+
+		terminalCapacities[node] = source - sink;
+	}
+
+	@Override
+	public void setEdgeWeight(final int node1, final int node2, final float weight) {
+
+		setEdgeWeight(node1, node2, weight, weight);
+	}
+
+	@Override
+	public void setEdgeWeight(final int node1, final int node2, final float weight1to2, final float weight2to1) {
+
+		final int edge        = 2*edgeNum;
+		final int reverseEdge = edge + 1;
+		edgeNum++;
+
+		heads[edge]           = node2;
+		nextEdges[edge]       = firstOutgoings[node1];
+		firstOutgoings[node1] = edge;
+		edgeCapacities[edge]  = weight1to2;
+
+		heads[reverseEdge]          = node1;
+		nextEdges[reverseEdge]      = firstOutgoings[node2];
+		firstOutgoings[node2]       = reverseEdge;
+		edgeCapacities[reverseEdge] = weight2to1;
+	}
+
+	/**
+	 * Performs the max-flow/min-cut computation. The computation always starts
+	 * from scratch, <tt>reuseTrees</tt> is ignored.
+	 *
+	 * @param reuseTrees   ignored
+	 * @param changedNodes list of nodes that changed their segmentation
+	 *                     compared to the previous call (all nodes on the
+	 *                     first call), can be set to <tt>null</tt>
+	 */
+	@Override
+	public float computeMaximumFlow(final boolean reuseTrees, final List<Integer> changedNodes) {
+
+		float flow = terminalFlow + prune();
+
+		findComponents();
+
+		flow += solveComponents();
+
+		changedList.clear();
+		for (int node = 0; node < numNodes; node++) {
+			final boolean isForeground = labels[node] == FOREGROUND;
+			if (maxflowIteration == 0 || isForeground != foreground[node])
+				changedList.add(node);
+			foreground[node] = isForeground;
+		}
+		if (changedNodes != null)
+			changedList.copyTo(changedNodes);
+
+		maxflowIteration++;
+
+		return flow;
+	}
+
+	@Override
+	public int[] getChangedNodes() {
+		return changedList.toArray();
+	}
+
+	/**
+	 * Remove all edges and terminal weights, in time linear in the number of
+	 * nodes. The segmentation is undefined until the next call of
+	 * {@link #computeMaximumFlow(boolean, List)}.
+	 */
+	@Override
+	public void reset() {
+
+		Arrays.fill(terminalCapacities, 0);
+		Arrays.fill(firstOutgoings, Graph.NONE);
+		edgeNum          = 0;
+		terminalFlow     = 0;
+		maxflowIteration = 0;
+	}
+
+	@Override
+	public GraphCut.Terminal getTerminal(final int node) {
+
+		return foreground[node] ? GraphCut.Terminal.FOREGROUND : GraphCut.Terminal.BACKGROUND;
+	}
+
+	/**
+	 * Does nothing, every computation starts from scratch.
+	 */
+	@Override
+	public void markNode(final int node) {
+	}
+
+	@Override
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	@Override
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	/**
+	 * @return the number of components that were solved by the last
+	 *         computation.
+	 */
+	public int getNumComponents() {
+		return numComponents;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Decide all nodes whose segmentation is forced by their terminal weights,
+	 * until no more nodes can be decided.
+	 *
+	 * @return the flow through the decided nodes
+	 */
+	private float prune() {
+
+		float flow = 0;
+
+		System.arraycopy(terminalCapacities, 0, capacities, 0, numNodes);
+
+		// only nodes that are decided on their own start the pruning, the
+		// others become candidates once one of their neighbors is decided
+		candidates.clear();
+		for (int node = numNodes - 1; node >= 0; node--) {
+			labels[node] = UNDECIDED;
+			float outgoing = 0;
+			float incoming = 0;
+			for (int edge = firstOutgoings[node]; edge != Graph.NONE; edge = nextEdges[edge]) {
+				if (heads[edge] != node) {
+					outgoing += edgeCapacities[edge];
+					incoming += edgeCapacities[edge ^ 1];
+				}
+			}
+			if (decide(capacities[node], outgoing, incoming) != UNDECIDED)
+				candidates.add(node);
+		}
+
+		while (!candidates.isEmpty()) {
+
+			final int node = candidates.removeLast();
+			if (labels[node] != UNDECIDED)
+				continue;
+
+			final float capacity = capacities[node];
+
+			float outgoing = 0;
+			float incoming = 0;
+			for (int edge = firstOutgoings[node]; edge != Graph.NONE; edge = nextEdges[edge]) {
+				final int head = heads[edge];
+				if (head != node && labels[head] == UNDECIDED) {
+					outgoing += edgeCapacities[edge];
+					incoming += edgeCapacities[edge ^ 1];
+				}
+			}
+
+			final byte label = decide(capacity, outgoing, incoming);
+			if (label == UNDECIDED)
+				continue;
+
+			labels[node] = label;
+			final boolean isForeground = label == FOREGROUND;
+
+			// the edges to the undecided neighbors become terminal weights:
+			// a foreground node pays for its outgoing edges if the neighbor is
+			// in the background, a background node for its incoming edges if
+			// the neighbor is in the foreground
+			for (int edge = firstOutgoings[node]; edge != Graph.NONE; edge = nextEdges[edge]) {
+
+				final int head = heads[edge];
+				if (head == node || labels[head] != UNDECIDED)
+					continue;
+
+				candidates.add(head);
+
+				final float weight = isForeground ? edgeCapacities[edge] : edgeCapacities[edge ^ 1];
+				if (weight == 0)
+					continue;
+
+				final float headCapacity = capacities[head];
+				if (isForeground) {
+					if (headCapacity < 0)
+						flow += Math.min(weight, -headCapacity);
+					capacities[head] = headCapacity + weight;
+				} else {
+					if (headCapacity > 0)
+						flow += Math.min(weight, headCapacity);
+					capacities[head] = headCapacity - weight;
+				}
+			}
+		}
+
+		return flow;
+	}
+
+	/**
+	 * Decide a node by its residual terminal capacity alone: a node whose
+	 * capacity exceeds the total capacity of its outgoing edges is in the
+	 * foreground, a node whose negative capacity exceeds the total capacity of
+	 * its incoming edges (or that is not connected to anything) is in the
+	 * background.
+	 */
+	private static byte decide(final float capacity, final float outgoing, final float incoming) {
+
+		if (capacity > outgoing)
+			return FOREGROUND;
+		else if (-capacity > incoming || capacity == 0 && outgoing == 0 && incoming == 0)
+			return BACKGROUND;
+		else
+			return UNDECIDED;
+	}
+
+	/**
+	 * Collect the connected components of the undecided nodes.
+	 */
+	private void findComponents() {
+
+		// mark undecided nodes as not yet visited
+		for (int node = 0; node < numNodes; node++)
+			localIndices[node] = labels[node] == UNDECIDED ? UNVISITED : Graph.NONE;
+
+		componentStarts.clear();
+
+		int end = 0;
+		for (int root = 0; root < numNodes; root++) {
+
+			if (localIndices[root] != UNVISITED)
+				continue;
+
+			// breadth-first search
+			final int start = end;
+			componentStarts.add(start);
+			componentNodes[end] = root;
+			localIndices[root]  = 0;
+			end++;
+
+			for (int i = start; i < end; i++) {
+				final int node = componentNodes[i];
+				for (int edge = firstOutgoings[node]; edge != Graph.NONE; edge = nextEdges[edge]) {
+					final int head = heads[edge];
+					if (localIndices[head] == UNVISITED && (edgeCapacities[edge] != 0 || edgeCapacities[edge ^ 1] != 0)) {
+						componentNodes[end] = head;
+						localIndices[head]  = end - start;
+						end++;
+					}
+				}
+			}
+		}
+		componentStarts.add(end);
+
+		numComponents = componentStarts.size() - 1;
+	}
+
+	/**
+	 * Solve all components, in parallel if more than one thread is used.
+	 *
+	 * @return the flow through the components
+	 */
+	private float solveComponents() {
+
+		final float[] componentFlows = new float[numComponents];
+
+		if (numThreads == 1 || numComponents < 2) {
+
+			for (int component = 0; component < numComponents; component++)
+				componentFlows[component] = solveComponent(component);
+
+		} else {
+
+			final int numTasks = Math.min(numThreads, numComponents);
+			final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numTasks);
+			for (int t = 0; t < numTasks; t++) {
+				final int task = t;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int component = task; component < numComponents; component += numTasks)
+							componentFlows[component] = solveComponent(component);
+						return null;
+					}
+				});
+			}
+
+			try {
+				for (final Future<Void> future : getExecutor().invokeAll(tasks))
+					future.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted", e);
+			} catch (final ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		// add up in a fixed order
+		float flow = 0;
+		for (final float componentFlow : componentFlows)
+			flow += componentFlow;
+		return flow;
+	}
+
+	private ExecutorService getExecutor() {
+
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(numThreads, numThreads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable, "DecomposedMaxFlow");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	private float solveComponent(final int component) {
+
+		final int start = componentStarts.get(component);
+		final int end   = componentStarts.get(component + 1);
+
+		// each edge pair is added once, from the node of its even edge
+		int numComponentEdges = 0;
+		for (int i = start; i < end; i++) {
+			final int node = componentNodes[i];
+			for (int edge = firstOutgoings[node]; edge != Graph.NONE; edge = nextEdges[edge])
+				if (isComponentEdge(node, edge))
+					numComponentEdges++;
+		}
+
+		final MaxFlow maxFlow = backend.create(end - start, numComponentEdges);
+
+		for (int i = start; i < end; i++) {
+			final int node       = componentNodes[i];
+			final float capacity = capacities[node];
+			maxFlow.setTerminalWeights(i - start, capacity > 0 ? capacity : 0, capacity < 0 ? -capacity : 0);
+			for (int edge = firstOutgoings[node]; edge != Graph.NONE; edge = nextEdges[edge])
+				if (isComponentEdge(node, edge))
+					maxFlow.setEdgeWeight(i - start, localIndices[heads[edge]], edgeCapacities[edge], edgeCapacities[edge ^ 1]);
+		}
+
+		final float flow = maxFlow.computeMaximumFlow(false, null);
+
+		for (int i = start; i < end; i++)
+			if (maxFlow.getTerminal(i - start) == GraphCut.Terminal.FOREGROUND)
+				labels[componentNodes[i]] = FOREGROUND;
+			else
+				labels[componentNodes[i]] = BACKGROUND;
+
+		return flow;
+	}
+
+	private boolean isComponentEdge(final int node, final int edge) {
+
+		final int head = heads[edge];
+		return (edge & 1) == 0 && head != node && localIndices[head] != Graph.NONE &&
+		       (edgeCapacities[edge] != 0 || edgeCapacities[edge ^ 1] != 0);
+	}
+}
@@ -1,5 +1,7 @@
 package graphcut;
 
+import java.util.Arrays;
+
 /**
  * Class wrapping some basic structures that are used to represent a graph.
  */
@@ -44,9 +46,14 @@ public class Graph {
 	private boolean[] inChangedList;
 
 	// the residual capacity of this node to the sink (<0) or from the source
-	// (>0)
+	// (>0), null if a subclass stores the capacities
 	private float[] residualNodeCapacities;
 
+	// firstOutgoings and residualNodeCapacities of a node are only valid if
+	// its epoch is the current one, otherwise they are NONE and 0
+	private int[] nodeEpochs;
+	private int   epoch;
+
 	/////////////////////////
 	// edge representation //
 	/////////////////////////
@@ -60,11 +67,24 @@ public class Graph {
 	// reverse arc
 	private int[] sisters;
 
-	// residual capacity of this edge
+	// residual capacity of this edge, null if a subclass stores the
+	// capacities
 	private float[] residualEdgeCapacities;
 
 	public Graph(int numNodes, int numEdges) {
 
+		this(numNodes, numEdges, true);
+	}
+
+	/**
+	 * @param floatCapacities whether to allocate the capacities. Subclasses
+	 *                        that store the capacities in another type pass
+	 *                        <tt>false</tt> and override the capacity
+	 *                        accessors and
+	 *                        {@link #clearResidualNodeCapacity(int)}.
+	 */
+	protected Graph(int numNodes, int numEdges, boolean floatCapacities) {
+
 		this.numNodes = numNodes;
 		this.numEdges = numEdges;
 
@@ -77,48 +97,49 @@ public class Graph {
 		inSink                 = new boolean[numNodes];
 		marked                 = new boolean[numNodes];
 		inChangedList          = new boolean[numNodes];
-		residualNodeCapacities = new float[2*numEdges];
+		nodeEpochs             = new int[numNodes];
 
 		// allocate edge data
 		heads                  = new int[2*numEdges];
 		nextEdges              = new int[2*numEdges];
 		sisters                = new int[2*numEdges];
-		residualEdgeCapacities = new float[2*numEdges];
-
-		// initialise node data
-		for (int i = 0; i < numNodes; i++) {
-			firstOutgoings[i]         = NONE;
-			parents[i]                = NONE;
-			nextNodes[i]              = NONE;
-			timestamps[i]             = 0;
-			distances[i]              = 0;
-			inSink[i]                 = false;
-			marked[i]                 = false;
-			residualNodeCapacities[i] = 0;
+
+		if (floatCapacities) {
+			residualNodeCapacities = new float[numNodes];
+			residualEdgeCapacities = new float[2*numEdges];
 		}
 
-		// initialise edge data
-		for (int i = 0; i < 2*numEdges; i++) {
-			heads[i]                  = NONE;
-			nextEdges[i]              = NONE;
-			sisters[i]                = NONE;
-			residualEdgeCapacities[i] = 0;
+		// all other data is written before it is read, for the node data by
+		// the initialisation of the max-flow algorithms
+		epoch = 1;
+	}
+
+	/**
+	 * Remove all edges and terminal weights in constant time.
+	 */
+	public void reset() {
+
+		if (epoch == Integer.MAX_VALUE) {
+			Arrays.fill(nodeEpochs, 0);
+			epoch = 0;
 		}
+		epoch++;
 	}
 
-	public final float getResidualNodeCapacity(int node) {
-		return residualNodeCapacities[node];
+	public float getResidualNodeCapacity(int node) {
+		return isCurrent(node) ? residualNodeCapacities[node] : 0;
 	}
 
-	public final void setResidualNodeCapacity(int node, float capacity) {
+	public void setResidualNodeCapacity(int node, float capacity) {
+		touch(node);
 		residualNodeCapacities[node] = capacity;
 	}
 
-	public final float getResidualEdgeCapacity(int edge) {
+	public float getResidualEdgeCapacity(int edge) {
 		return residualEdgeCapacities[edge];
 	}
 
-	public final void setResidualEdgeCapacity(int edge, float capacity) {
+	public void setResidualEdgeCapacity(int edge, float capacity) {
 		residualEdgeCapacities[edge] = capacity;
 	}
 
@@ -155,10 +176,11 @@ public class Graph {
 	}
 
 	public final int getFirstOutgoing(int node) {
-		return firstOutgoings[node];
+		return isCurrent(node) ? firstOutgoings[node] : NONE;
 	}
 
 	public final void setFirstOutgoing(int node, int edge) {
+		touch(node);
 		firstOutgoings[node] = edge;
 	}
 
@@ -217,4 +239,31 @@ public class Graph {
 	public final void isMarked(int node, boolean is) {
 		marked[node] = is;
 	}
+
+	/**
+	 * @return whether the lazily initialised data of a node is valid
+	 */
+	protected final boolean isCurrent(int node) {
+		return nodeEpochs[node] == epoch;
+	}
+
+	/**
+	 * Bring the lazily initialised data of a node to the current epoch.
+	 */
+	protected final void touch(int node) {
+
+		if (nodeEpochs[node] != epoch) {
+			nodeEpochs[node]     = epoch;
+			firstOutgoings[node] = NONE;
+			clearResidualNodeCapacity(node);
+		}
+	}
+
+	/**
+	 * Set the residual capacity of a node to 0 when it enters the current
+	 * epoch.
+	 */
+	protected void clearResidualNodeCapacity(int node) {
+		residualNodeCapacities[node] = 0;
+	}
 }
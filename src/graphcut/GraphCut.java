@@ -34,7 +34,7 @@ import java.util.List;
 /**
  * Class implementing the grach cut algorithm.
  */
-public class GraphCut {
+public class GraphCut implements MaxFlow {
 
 	/**
 	 * The two possible segments, represented as special terminal nodes in the graph.
@@ -51,8 +51,9 @@ public class GraphCut {
 	// counter for initialisation of edges
 	private int edgeNum;
 
-	// the total flow in the whole graph
-	private float totalFlow;
+	// the total flow in the whole graph, in double precision so that it is
+	// exact for integer capacities
+	private double totalFlow;
 
 	// counter for the numbers of iterations to maxflow
 	private int maxflowIteration;
@@ -67,6 +68,10 @@ public class GraphCut {
 	// list of orphans
 	private final LinkedList<Integer> orphans;
 
+	// nodes that were added to the changed list in the current (or last)
+	// computation
+	private final IntList changedList;
+
 	// counter for iterations of main loop
 	private int time;
 
@@ -80,13 +85,24 @@ public class GraphCut {
 	 *                 direction) count as one edge.
 	 */
 	public GraphCut(final int numNodes, final int numEdges) {
-		graph            = new Graph(numNodes, numEdges);
+		this(new Graph(numNodes, numEdges));
+	}
+
+	/**
+	 * Initialises the graph cut implementation on the given graph, e.g., one
+	 * that stores the capacities in another type.
+	 *
+	 * @param graph The graph without edges.
+	 */
+	protected GraphCut(final Graph graph) {
+		this.graph       = graph;
 		edgeNum          = 0;
 		totalFlow        = 0;
 		maxflowIteration = 0;
 		activeQueueFirst = new int[2];
 		activeQueueLast  = new int[2];
 		orphans          = new LinkedList<Integer>();
+		changedList      = new IntList();
 	}
 
 	/**
@@ -97,6 +113,7 @@ public class GraphCut {
 	 * @param source The affinity of this node to the foreground (i.e., source)
 	 * @param sink   The affinity of this node to the background (i.e., sink)
 	 */
+	@Override
 	public void setTerminalWeights(final int node, float source, float sink) {
 
 		final float delta = graph.getResidualNodeCapacity(node);
@@ -121,6 +138,7 @@ public class GraphCut {
 	 * @param node2   The second node.
 	 * @param weight  The weight (i.e., the cost) of the connecting edge.
 	 */
+	@Override
 	public void setEdgeWeight(final int node1, final int node2, final float weight) {
 
 		setEdgeWeight(node1, node2, weight, weight);
@@ -139,6 +157,7 @@ public class GraphCut {
 	 * @param weight2to1 The weight (i.e., the cost) of the directed edge from
 	 *                   node2 to node1.
 	 */
+	@Override
 	public void setEdgeWeight(final int node1, final int node2, final float weight1to2, final float weight2to1) {
 
 		// get edge indices
@@ -171,14 +190,20 @@ public class GraphCut {
 	 *
 	 * @param reuseTrees   reuse trees of a previos call
 	 * @param changedNodes list of nodes that potentially changed their
-	 *                     segmentation compared to a previous call, can be set
-	 *                     to <tt>null</tt>
+	 *                     segmentation compared to the previous call, can be
+	 *                     set to <tt>null</tt>
 	 */
+	@Override
 	public float computeMaximumFlow(boolean reuseTrees, final List<Integer> changedNodes) {
 
 		if (maxflowIteration == 0)
 			reuseTrees = false;
 
+		// forget the changes of the previous computation
+		for (int i = 0; i < changedList.size(); i++)
+			graph.isInChangedList(changedList.get(i), false);
+		changedList.clear();
+
 		if (reuseTrees)
 			maxflowReuseTreesInit();
 		else
@@ -299,17 +324,41 @@ public class GraphCut {
 
 		maxflowIteration++;
 
-		// create list of changed nodes
-		if (changedNodes != null) {
-			changedNodes.clear();
-			for (int i = 0; i < graph.getNumNodes(); i++)
-				if (graph.isInChangedList(i))
-					changedNodes.add(i);
-		}
+		if (changedNodes != null)
+			changedList.copyTo(changedNodes);
+
+		return (float)totalFlow;
+	}
 
+	/**
+	 * @return the value of the flow found by the last call of
+	 *         {@link #computeMaximumFlow(boolean, List)} in double precision,
+	 *         exact for integer capacities
+	 */
+	protected double getFlow() {
 		return totalFlow;
 	}
 
+	@Override
+	public int[] getChangedNodes() {
+		return changedList.toArray();
+	}
+
+	/**
+	 * Remove all edges and terminal weights in constant time, such that the
+	 * memory can be used for a new graph with at most the same number of
+	 * nodes and edges. The segmentation is undefined until the next call of
+	 * {@link #computeMaximumFlow(boolean, List)}, which starts from scratch.
+	 */
+	@Override
+	public void reset() {
+
+		graph.reset();
+		edgeNum          = 0;
+		totalFlow        = 0;
+		maxflowIteration = 0;
+	}
+
 	/**
 	 * Get the segmentation, i.e., the terminal node that is connected to the
 	 * specified node. If there are several min-cut solutions, free nodes are
@@ -319,6 +368,7 @@ public class GraphCut {
 	 * @return Either <tt>Terminal.FOREGROUND</tt> or
 	 *         <tt>Terminal.BACKGROUND</tt>
 	 */
+	@Override
 	public Terminal getTerminal(final int node) {
 
 		if (graph.getParent(node) != Graph.NONE)
@@ -332,6 +382,7 @@ public class GraphCut {
 	 *
 	 * @return The number of nodes
 	 */
+	@Override
 	public int getNumNodes() {
 		return graph.getNumNodes();
 	}
@@ -341,6 +392,7 @@ public class GraphCut {
 	 *
 	 * @return The number of edges.
 	 */
+	@Override
 	public int getNumEdges() {
 		return graph.getNumEdges();
 	}
@@ -357,6 +409,7 @@ public class GraphCut {
 	 *
 	 * @param nodeId The node that changed.
 	 */
+	@Override
 	public void markNode(final int node) {
 
 		if (graph.getNextNode(node) == Graph.NONE) {
@@ -462,7 +515,10 @@ public class GraphCut {
 	 */
 	private void addToChangedList(final int node) {
 
-		graph.isInChangedList(node, true);
+		if (!graph.isInChangedList(node)) {
+			graph.isInChangedList(node, true);
+			changedList.add(node);
+		}
 	}
 
 	/**
@@ -485,7 +541,6 @@ public class GraphCut {
 
 			graph.setNextNode(node, Graph.NONE);
 			graph.isMarked(node, false);
-			graph.isInChangedList(node, false);
 			graph.setTimestamp(node, time);
 
 			if (graph.getResidualNodeCapacity(node) > 0) {
@@ -0,0 +1,607 @@
+/**
+ * Incremental Breadth-First Search (IBFS) max-flow.
+ *
+ * This implementation follows the algorithm described in
+ *
+ *	"Maximum Flows by Incremental Breadth-First Search."
+ *	Andrew V. Goldberg, Sagi Hed, Haim Kaplan, Robert E. Tarjan and
+ *	Renato F. Werneck.
+ *	In Proceedings of the 19th European Symposium on Algorithms (ESA),
+ *	2011
+ */
+package graphcut;
+
+import java.util.List;
+
+/**
+ * Max-flow/min-cut by incremental breadth-first search.
+ *
+ * Like {@link GraphCut}, IBFS grows a source and a sink search tree and
+ * augments along paths where they meet. The trees are kept as breadth-first
+ * search trees with exact distance labels, which makes the running time
+ * polynomially bounded: orphans are re-attached by relabeling instead of
+ * tracing their (potentially long) paths to the terminal.
+ *
+ * The graph is stored in a {@link Graph}, and the segmentation is the same as
+ * the one of {@link GraphCut}: the final source tree contains exactly the
+ * nodes reachable from the source in the residual graph.
+ */
+public class IncrementalBreadthFirstSearch implements MaxFlow {
+
+	// graph structure
+	private final Graph graph;
+
+	// counter for initialisation of edges
+	private int edgeNum;
+
+	// the total flow in the whole graph
+	private float totalFlow;
+
+	// label of the nodes that are scanned in the current (or next) pass of
+	// the source and sink tree
+	private int sourceFront;
+	private int sinkFront;
+
+	// whether a pass of the source or sink tree is in progress
+	private boolean sourcePass;
+	private boolean sinkPass;
+
+	// nodes to scan in the current pass and nodes found for the next pass,
+	// may contain nodes that changed their label in the meantime
+	private IntList sourceNodes;
+	private IntList nextSourceNodes;
+	private IntList sinkNodes;
+	private IntList nextSinkNodes;
+
+	// circular queue of orphans
+	private final int[] orphans;
+	private int orphansFirst;
+	private int numOrphans;
+
+	// the segmentation of the last computation
+	private final boolean[] foreground;
+
+	// nodes that changed their segmentation in the last computation
+	private final IntList changedList;
+
+	// counter for the numbers of iterations to maxflow
+	private int maxflowIteration;
+
+	/**
+	 * Initialises the implementation and allocates the memory needed for the
+	 * given number of nodes and edges.
+	 *
+	 * @param numNodes The number of nodes that should be created.
+	 * @param numEdges The number of edges that you can add. A directed edge and its
+	 *                 counterpart (i.e., the directed edge in the other
+	 *                 direction) count as one edge.
+	 */
+	public IncrementalBreadthFirstSearch(final int numNodes, final int numEdges) {
+		graph           = new Graph(numNodes, numEdges);
+		edgeNum         = 0;
+		totalFlow       = 0;
+		sourceNodes     = new IntList();
+		nextSourceNodes = new IntList();
+		sinkNodes       = new IntList();
+		nextSinkNodes   = new IntList();
+		orphans         = new int[numNodes];
+		foreground      = new boolean[numNodes];
+		changedList     = new IntList();
+	}
+
+	@Override
+	public void setTerminalWeights(final int node, float source, float sink) {
+
+		final float delta = graph.getResidualNodeCapacity(node);
+
+		if (delta > 0)
+			source += delta;
+		else
+			sink   -= delta;
+
+		totalFlow += (source < sink) ? source : sink;
+
+		graph.setResidualNodeCapacity(node, source -sink);
+	}
+
+	@Override
+	public void setEdgeWeight(final int node1, final int node2, final float weight) {
+
+		setEdgeWeight(node1, node2, weight, weight);
+	}
+
+	@Override
+	public void setEdgeWeight(final int node1, final int node2, final float weight1to2, final float weight2to1) {
+
+		// get edge indices
+		final int edge        = edgeNum; edgeNum++;
+		final int reverseEdge = edgeNum; edgeNum++;
+
+		// link edges
+		graph.setSister(edge, reverseEdge);
+		graph.setSister(reverseEdge, edge);
+
+		// add node1 to edge
+		graph.setNextEdge(edge, graph.getFirstOutgoing(node1));
+		graph.setFirstOutgoing(node1, edge);
+
+		// add node2 to reverseEdge
+		graph.setNextEdge(reverseEdge, graph.getFirstOutgoing(node2));
+		graph.setFirstOutgoing(node2, reverseEdge);
+
+		// set targets of edges
+		graph.setHead(edge, node2);
+		graph.setHead(reverseEdge, node1);
+
+		// set residual capacities
+		graph.setResidualEdgeCapacity(edge, weight1to2);
+		graph.setResidualEdgeCapacity(reverseEdge, weight2to1);
+	}
+
+	/**
+	 * Performs the actual max-flow/min-cut computation. The search trees are
+	 * always rebuilt from the current residual graph, <tt>reuseTrees</tt> is
+	 * ignored.
+	 *
+	 * @param reuseTrees   ignored
+	 * @param changedNodes list of nodes that changed their segmentation
+	 *                     compared to the previous call (all nodes on the
+	 *                     first call), can be set to <tt>null</tt>
+	 */
+	@Override
+	public float computeMaximumFlow(final boolean reuseTrees, final List<Integer> changedNodes) {
+
+		maxflowInit();
+
+		// Grow the tree with fewer nodes to scan. Once the source tree cannot
+		// grow anymore, it contains exactly the nodes reachable from the
+		// source. Once the sink tree cannot grow anymore, the flow is maximal,
+		// and the source tree is grown until it is complete.
+		boolean sinkDone = false;
+		while (true) {
+			if (sinkDone || sourceNodes.size() <= sinkNodes.size()) {
+				if (!growSourceTree())
+					break;
+			} else if (!growSinkTree())
+				sinkDone = true;
+		}
+
+		changedList.clear();
+		for (int node = 0; node < graph.getNumNodes(); node++) {
+			final boolean isForeground = getTerminal(node) == GraphCut.Terminal.FOREGROUND;
+			if (maxflowIteration == 0 || isForeground != foreground[node])
+				changedList.add(node);
+			foreground[node] = isForeground;
+		}
+		if (changedNodes != null)
+			changedList.copyTo(changedNodes);
+
+		maxflowIteration++;
+
+		return totalFlow;
+	}
+
+	@Override
+	public int[] getChangedNodes() {
+		return changedList.toArray();
+	}
+
+	/**
+	 * Remove all edges and terminal weights in constant time, such that the
+	 * memory can be used for a new graph with at most the same number of
+	 * nodes and edges. The segmentation is undefined until the next call of
+	 * {@link #computeMaximumFlow(boolean, List)}, which starts from scratch.
+	 */
+	@Override
+	public void reset() {
+
+		graph.reset();
+		edgeNum          = 0;
+		totalFlow        = 0;
+		maxflowIteration = 0;
+	}
+
+	@Override
+	public GraphCut.Terminal getTerminal(final int node) {
+
+		if (graph.getParent(node) != Graph.NONE)
+			return graph.isInSink(node) ? GraphCut.Terminal.BACKGROUND : GraphCut.Terminal.FOREGROUND;
+		else
+			return GraphCut.Terminal.BACKGROUND;
+	}
+
+	/**
+	 * Does nothing, the search trees are always rebuilt.
+	 */
+	@Override
+	public void markNode(final int node) {
+	}
+
+	@Override
+	public int getNumNodes() {
+		return graph.getNumNodes();
+	}
+
+	@Override
+	public int getNumEdges() {
+		return graph.getNumEdges();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Make all nodes with a residual terminal capacity roots of the source or
+	 * sink tree, all others free.
+	 */
+	private void maxflowInit() {
+
+		sourceNodes.clear();
+		nextSourceNodes.clear();
+		sinkNodes.clear();
+		nextSinkNodes.clear();
+		sourceFront  = 1;
+		sinkFront    = 1;
+		sourcePass   = false;
+		sinkPass     = false;
+		orphansFirst = 0;
+		numOrphans   = 0;
+
+		for (int node = 0; node < graph.getNumNodes(); node++) {
+
+			if (graph.getResidualNodeCapacity(node) > 0) {
+				// node is connected to source
+				graph.isInSink(node, false);
+				graph.setParent(node, Graph.TERMINAL);
+				graph.setDistance(node, 1);
+				sourceNodes.add(node);
+			} else if (graph.getResidualNodeCapacity(node) < 0) {
+				// node is connected to sink
+				graph.isInSink(node, true);
+				graph.setParent(node, Graph.TERMINAL);
+				graph.setDistance(node, 1);
+				sinkNodes.add(node);
+			} else {
+				graph.setParent(node, Graph.NONE);
+			}
+		}
+	}
+
+	private boolean inSourceTree(final int node) {
+		return graph.getParent(node) != Graph.NONE && !graph.isInSink(node);
+	}
+
+	private boolean inSinkTree(final int node) {
+		return graph.getParent(node) != Graph.NONE && graph.isInSink(node);
+	}
+
+	/**
+	 * Scan all nodes of the source tree with label <tt>sourceFront</tt>.
+	 *
+	 * @return false, if there were no nodes to scan
+	 */
+	private boolean growSourceTree() {
+
+		sourcePass = true;
+		int numScanned = 0;
+
+		// sourceNodes may grow while scanning
+		for (int i = 0; i < sourceNodes.size(); i++) {
+
+			final int node = sourceNodes.get(i);
+			if (!inSourceTree(node) || graph.getDistance(node) != sourceFront)
+				continue;
+			numScanned++;
+
+			int edge = graph.getFirstOutgoing(node);
+			while (edge != Graph.NONE) {
+
+				if (graph.getResidualEdgeCapacity(edge) != 0) {
+
+					final int headNode = graph.getHead(edge);
+
+					if (graph.getParent(headNode) == Graph.NONE) {
+						// free node found, add to source tree
+						graph.isInSink(headNode, false);
+						graph.setParent(headNode, graph.getSister(edge));
+						graph.setDistance(headNode, sourceFront + 1);
+						nextSourceNodes.add(headNode);
+
+					} else if (graph.isInSink(headNode)) {
+						// path via edge found
+						augment(edge);
+						processOrphans();
+						if (!inSourceTree(node) || graph.getDistance(node) != sourceFront)
+							break;
+						// look at the same edge again
+						continue;
+					}
+				}
+				edge = graph.getNextEdge(edge);
+			}
+		}
+
+		final IntList scanned = sourceNodes;
+		sourceNodes     = nextSourceNodes;
+		nextSourceNodes = scanned;
+		nextSourceNodes.clear();
+		sourceFront++;
+		sourcePass = false;
+
+		return numScanned > 0;
+	}
+
+	/**
+	 * Scan all nodes of the sink tree with label <tt>sinkFront</tt>.
+	 *
+	 * @return false, if there were no nodes to scan
+	 */
+	private boolean growSinkTree() {
+
+		sinkPass = true;
+		int numScanned = 0;
+
+		// sinkNodes may grow while scanning
+		for (int i = 0; i < sinkNodes.size(); i++) {
+
+			final int node = sinkNodes.get(i);
+			if (!inSinkTree(node) || graph.getDistance(node) != sinkFront)
+				continue;
+			numScanned++;
+
+			int edge = graph.getFirstOutgoing(node);
+			while (edge != Graph.NONE) {
+
+				if (graph.getResidualEdgeCapacity(graph.getSister(edge)) != 0) {
+
+					final int headNode = graph.getHead(edge);
+
+					if (graph.getParent(headNode) == Graph.NONE) {
+						// free node found, add to sink tree
+						graph.isInSink(headNode, true);
+						graph.setParent(headNode, graph.getSister(edge));
+						graph.setDistance(headNode, sinkFront + 1);
+						nextSinkNodes.add(headNode);
+
+					} else if (!graph.isInSink(headNode)) {
+						// path via edge's sister found
+						augment(graph.getSister(edge));
+						processOrphans();
+						if (!inSinkTree(node) || graph.getDistance(node) != sinkFront)
+							break;
+						// look at the same edge again
+						continue;
+					}
+				}
+				edge = graph.getNextEdge(edge);
+			}
+		}
+
+		final IntList scanned = sinkNodes;
+		sinkNodes     = nextSinkNodes;
+		nextSinkNodes = scanned;
+		nextSinkNodes.clear();
+		sinkFront++;
+		sinkPass = false;
+
+		return numScanned > 0;
+	}
+
+	/**
+	 * Perform the augmentation along the path through <tt>middle</tt>, which
+	 * leads from the source tree to the sink tree.
+	 */
+	private void augment(final int middle) {
+
+		int node;
+		int edge;
+
+		float bottleneck;
+
+		// 1. find bottleneck capacity
+
+		// 1a - the source tree
+		bottleneck = graph.getResidualEdgeCapacity(middle);
+		for (node = graph.getHead(graph.getSister(middle)); ; node = graph.getHead(edge)) {
+
+			edge = graph.getParent(node);
+
+			if (edge == Graph.TERMINAL)
+				break;
+			if (bottleneck > graph.getResidualEdgeCapacity(graph.getSister(edge)))
+				bottleneck = graph.getResidualEdgeCapacity(graph.getSister(edge));
+		}
+
+		if (bottleneck > graph.getResidualNodeCapacity(node))
+			bottleneck = graph.getResidualNodeCapacity(node);
+
+		// 1b - the sink tree
+		for (node = graph.getHead(middle); ; node = graph.getHead(edge)) {
+
+			edge = graph.getParent(node);
+
+			if (edge == Graph.TERMINAL)
+				break;
+			if (bottleneck > graph.getResidualEdgeCapacity(edge))
+				bottleneck = graph.getResidualEdgeCapacity(edge);
+		}
+		if (bottleneck > -graph.getResidualNodeCapacity(node))
+			bottleneck = -graph.getResidualNodeCapacity(node);
+
+		// 2. augmenting
+
+		// 2a - the source tree
+		graph.setResidualEdgeCapacity(graph.getSister(middle), graph.getResidualEdgeCapacity(graph.getSister(middle)) + bottleneck);
+		graph.setResidualEdgeCapacity(middle, graph.getResidualEdgeCapacity(middle) - bottleneck);
+		for (node = graph.getHead(graph.getSister(middle)); ; node = graph.getHead(edge)) {
+
+			edge = graph.getParent(node);
+
+			if (edge == Graph.TERMINAL) {
+				// end of path
+				break;
+			}
+			graph.setResidualEdgeCapacity(edge, graph.getResidualEdgeCapacity(edge) + bottleneck);
+			graph.setResidualEdgeCapacity(graph.getSister(edge), graph.getResidualEdgeCapacity(graph.getSister(edge)) - bottleneck);
+			if (graph.getResidualEdgeCapacity(graph.getSister(edge)) == 0)
+				addOrphan(node);
+		}
+		graph.setResidualNodeCapacity(node, graph.getResidualNodeCapacity(node) - bottleneck);
+		if (graph.getResidualNodeCapacity(node) == 0)
+			addOrphan(node);
+
+		// 2b - the sink tree
+		for (node = graph.getHead(middle); ; node = graph.getHead(edge)) {
+
+			edge = graph.getParent(node);
+
+			if (edge == Graph.TERMINAL) {
+				// end of path
+				break;
+			}
+			graph.setResidualEdgeCapacity(graph.getSister(edge), graph.getResidualEdgeCapacity(graph.getSister(edge)) + bottleneck);
+			graph.setResidualEdgeCapacity(edge, graph.getResidualEdgeCapacity(edge) - bottleneck);
+			if (graph.getResidualEdgeCapacity(edge) == 0)
+				addOrphan(node);
+		}
+		graph.setResidualNodeCapacity(node, graph.getResidualNodeCapacity(node) + bottleneck);
+		if (graph.getResidualNodeCapacity(node) == 0)
+			addOrphan(node);
+
+		totalFlow += bottleneck;
+	}
+
+	/**
+	 * Mark a node as orphan and add it to the queue.
+	 */
+	private void addOrphan(final int node) {
+
+		graph.setParent(node, Graph.ORPHAN);
+
+		int last = orphansFirst + numOrphans;
+		if (last >= orphans.length)
+			last -= orphans.length;
+		orphans[last] = node;
+		numOrphans++;
+	}
+
+	private void processOrphans() {
+
+		while (numOrphans > 0) {
+
+			final int orphan = orphans[orphansFirst];
+			orphansFirst++;
+			if (orphansFirst == orphans.length)
+				orphansFirst = 0;
+			numOrphans--;
+
+			if (graph.isInSink(orphan))
+				processSinkOrphan(orphan);
+			else
+				processSourceOrphan(orphan);
+		}
+	}
+
+	/**
+	 * Adopt an orphan of the source tree.
+	 *
+	 * Orphans are accepted as parents as well: they are either adopted at
+	 * their current label or relabeled (which orphans their children) later.
+	 */
+	private void processSourceOrphan(final int orphan) {
+
+		final int distance = graph.getDistance(orphan);
+
+		// try to find a parent with the same distance as before
+		for (int edge = graph.getFirstOutgoing(orphan); edge != Graph.NONE; edge = graph.getNextEdge(edge)) {
+			final int node = graph.getHead(edge);
+			if (inSourceTree(node) &&
+			    graph.getDistance(node) == distance - 1 &&
+			    graph.getResidualEdgeCapacity(graph.getSister(edge)) != 0) {
+				graph.setParent(orphan, edge);
+				return;
+			}
+		}
+
+		// relabel: find the parent with minimal distance
+		int bestEdge    = Graph.NONE;
+		int minDistance = Integer.MAX_VALUE;
+		for (int edge = graph.getFirstOutgoing(orphan); edge != Graph.NONE; edge = graph.getNextEdge(edge)) {
+
+			final int node = graph.getHead(edge);
+			if (inSourceTree(node)) {
+				if (graph.getParent(node) == graph.getSister(edge))
+					// child of orphan
+					addOrphan(node);
+				if (graph.getResidualEdgeCapacity(graph.getSister(edge)) != 0 && graph.getDistance(node) < minDistance) {
+					bestEdge    = edge;
+					minDistance = graph.getDistance(node);
+				}
+			}
+		}
+
+		// nodes with a label beyond the front cannot be scanned anymore
+		final int maxDistance = sourcePass ? sourceFront + 1 : sourceFront;
+		if (bestEdge != Graph.NONE && minDistance + 1 <= maxDistance) {
+			graph.setParent(orphan, bestEdge);
+			graph.setDistance(orphan, minDistance + 1);
+			if (minDistance + 1 == sourceFront)
+				sourceNodes.add(orphan);
+			else if (minDistance + 1 > sourceFront)
+				nextSourceNodes.add(orphan);
+		} else
+			graph.setParent(orphan, Graph.NONE);
+	}
+
+	/**
+	 * Adopt an orphan of the sink tree.
+	 *
+	 * Orphans are accepted as parents as well: they are either adopted at
+	 * their current label or relabeled (which orphans their children) later.
+	 */
+	private void processSinkOrphan(final int orphan) {
+
+		final int distance = graph.getDistance(orphan);
+
+		// try to find a parent with the same distance as before
+		for (int edge = graph.getFirstOutgoing(orphan); edge != Graph.NONE; edge = graph.getNextEdge(edge)) {
+			final int node = graph.getHead(edge);
+			if (inSinkTree(node) &&
+			    graph.getDistance(node) == distance - 1 &&
+			    graph.getResidualEdgeCapacity(edge) != 0) {
+				graph.setParent(orphan, edge);
+				return;
+			}
+		}
+
+		// relabel: find the parent with minimal distance
+		int bestEdge    = Graph.NONE;
+		int minDistance = Integer.MAX_VALUE;
+		for (int edge = graph.getFirstOutgoing(orphan); edge != Graph.NONE; edge = graph.getNextEdge(edge)) {
+
+			final int node = graph.getHead(edge);
+			if (inSinkTree(node)) {
+				if (graph.getParent(node) == graph.getSister(edge))
+					// child of orphan
+					addOrphan(node);
+				if (graph.getResidualEdgeCapacity(edge) != 0 && graph.getDistance(node) < minDistance) {
+					bestEdge    = edge;
+					minDistance = graph.getDistance(node);
+				}
+			}
+		}
+
+		// nodes with a label beyond the front cannot be scanned anymore
+		final int maxDistance = sinkPass ? sinkFront + 1 : sinkFront;
+		if (bestEdge != Graph.NONE && minDistance + 1 <= maxDistance) {
+			graph.setParent(orphan, bestEdge);
+			graph.setDistance(orphan, minDistance + 1);
+			if (minDistance + 1 == sinkFront)
+				sinkNodes.add(orphan);
+			else if (minDistance + 1 > sinkFront)
+				nextSinkNodes.add(orphan);
+		} else
+			graph.setParent(orphan, Graph.NONE);
+	}
+}
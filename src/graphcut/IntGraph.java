@@ -0,0 +1,52 @@
+package graphcut;
+
+/**
+ * {@link Graph} with integer capacities. Node capacities are stored as
+ * <tt>int</tt>s and edge capacities as <tt>short</tt>s, halving the memory of
+ * the edge capacities compared to {@link Graph}. Capacities are passed as
+ * floats and must be integral.
+ */
+
+public class IntGraph extends Graph {
+
+	// the residual capacity of this node to the sink (<0) or from the source
+	// (>0)
+	private final int[] residualNodeCapacities;
+
+	// residual capacity of this edge
+	private final short[] residualEdgeCapacities;
+
+	public IntGraph(int numNodes, int numEdges) {
+
+		super(numNodes, numEdges, false);
+
+		residualNodeCapacities = new int[numNodes];
+		residualEdgeCapacities = new short[2*numEdges];
+	}
+
+	@Override
+	public final float getResidualNodeCapacity(int node) {
+		return isCurrent(node) ? residualNodeCapacities[node] : 0;
+	}
+
+	@Override
+	public final void setResidualNodeCapacity(int node, float capacity) {
+		touch(node);
+		residualNodeCapacities[node] = (int)capacity;
+	}
+
+	@Override
+	public final float getResidualEdgeCapacity(int edge) {
+		return residualEdgeCapacities[edge];
+	}
+
+	@Override
+	public final void setResidualEdgeCapacity(int edge, float capacity) {
+		residualEdgeCapacities[edge] = (short)capacity;
+	}
+
+	@Override
+	protected final void clearResidualNodeCapacity(int node) {
+		residualNodeCapacities[node] = 0;
+	}
+}
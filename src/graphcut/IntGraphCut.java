@@ -0,0 +1,153 @@
+package graphcut;
+
+/**
+ * The graph cut algorithm of {@link GraphCut} on an {@link IntGraph}, for
+ * integer capacities.
+ *
+ * All capacities are exact, so no residual capacity is left close to but not
+ * equal to zero. Edge capacities are stored as <tt>short</tt>s: the two
+ * directed weights of each edge must add up to at most
+ * <tt>Short.MAX_VALUE</tt>. The residual capacity of a node must not exceed
+ * {@link #MAX_NODE_CAPACITY} in magnitude, so that the floating point
+ * arithmetic of {@link GraphCut} stays exact. The float methods of
+ * {@link MaxFlow} are accepted as long as their arguments are integral.
+ */
+public class IntGraphCut extends GraphCut {
+
+	/**
+	 * Largest residual node capacity, the largest integer up to which all
+	 * integers are exactly representable as floats.
+	 */
+	public static final int MAX_NODE_CAPACITY = 1 << 24;
+
+	private final IntGraph graph;
+
+	/**
+	 * Initialises the graph cut implementation and allocates the memory needed
+	 * for the given number of nodes and edges.
+	 *
+	 * @param numNodes The number of nodes that should be created.
+	 * @param numEdges The number of edges that you can add. A directed edge and its
+	 *                 counterpart (i.e., the directed edge in the other
+	 *                 direction) count as one edge.
+	 */
+	public IntGraphCut(final int numNodes, final int numEdges) {
+		this(new IntGraph(numNodes, numEdges));
+	}
+
+	private IntGraphCut(final IntGraph graph) {
+		super(graph);
+		this.graph = graph;
+	}
+
+	/**
+	 * Set the affinity for one node to belong to the foreground (i.e., source)
+	 * or background (i.e., sink).
+	 *
+	 * @param node   The number of the node.
+	 * @param source The affinity of this node to the foreground (i.e., source)
+	 * @param sink   The affinity of this node to the background (i.e., sink)
+	 * @throws IllegalArgumentException if the residual capacity of the node
+	 *                                  would exceed {@link #MAX_NODE_CAPACITY}
+	 */
+	public void setTerminalWeights(final int node, final int source, final int sink) {
+
+		final long delta = (long)graph.getResidualNodeCapacity(node);
+		if (Math.abs(delta + source - sink) > MAX_NODE_CAPACITY || Math.max(source, sink) > MAX_NODE_CAPACITY)
+			throw new IllegalArgumentException("terminal weights " + source + " and " + sink + " exceed the capacity of node " + node);
+
+		super.setTerminalWeights(node, source, sink);
+	}
+
+	/**
+	 * Same as {@link #setTerminalWeights(int, int, int)}.
+	 *
+	 * @throws IllegalArgumentException if one of the weights is not integral
+	 */
+	@Override
+	public void setTerminalWeights(final int node, final float source, final float sink) {
+
+		setTerminalWeights(node, toCapacity(source), toCapacity(sink));
+	}
+
+	/**
+	 * Set the edge weight of an undirected edge between two nodes.
+	 *
+	 * Please note that you cannot call any <tt>setEdgeWeight</tt> more often
+	 * than the number of edges you specified at the time of construction!
+	 *
+	 * @param node1   The first node.
+	 * @param node2   The second node.
+	 * @param weight  The weight (i.e., the cost) of the connecting edge.
+	 */
+	public void setEdgeWeight(final int node1, final int node2, final int weight) {
+
+		setEdgeWeight(node1, node2, weight, weight);
+	}
+
+	/**
+	 * Same as {@link #setEdgeWeight(int, int, int)}.
+	 *
+	 * @throws IllegalArgumentException if the weight is not integral
+	 */
+	@Override
+	public void setEdgeWeight(final int node1, final int node2, final float weight) {
+
+		setEdgeWeight(node1, node2, toCapacity(weight));
+	}
+
+	/**
+	 * Set the edge weight of a pair of directed edges between two nodes.
+	 *
+	 * Please note that you cannot call any <tt>setEdgeWeight</tt> more often
+	 * than the number of edges you specified at the time of construction!
+	 *
+	 * @param node1      The first node.
+	 * @param node2      The second node.
+	 * @param weight1to2 The weight (i.e., the cost) of the directed edge from
+	 *                   node1 to node2.
+	 * @param weight2to1 The weight (i.e., the cost) of the directed edge from
+	 *                   node2 to node1.
+	 * @throws IllegalArgumentException if a weight is negative or both weights
+	 *                                  add up to more than
+	 *                                  <tt>Short.MAX_VALUE</tt>
+	 */
+	public void setEdgeWeight(final int node1, final int node2, final int weight1to2, final int weight2to1) {
+
+		if (weight1to2 < 0 || weight2to1 < 0)
+			throw new IllegalArgumentException("edge weights must not be negative");
+		if (weight1to2 + weight2to1 > Short.MAX_VALUE)
+			throw new IllegalArgumentException("edge weights " + weight1to2 + " and " + weight2to1 + " exceed the capacity of an edge");
+
+		super.setEdgeWeight(node1, node2, weight1to2, weight2to1);
+	}
+
+	/**
+	 * Same as {@link #setEdgeWeight(int, int, int, int)}.
+	 *
+	 * @throws IllegalArgumentException if one of the weights is not integral
+	 */
+	@Override
+	public void setEdgeWeight(final int node1, final int node2, final float weight1to2, final float weight2to1) {
+
+		setEdgeWeight(node1, node2, toCapacity(weight1to2), toCapacity(weight2to1));
+	}
+
+	/**
+	 * @return the exact value of the flow found by the last call of
+	 *         {@link #computeMaximumFlow(boolean, java.util.List)}.
+	 */
+	public long getTotalFlow() {
+		return (long)getFlow();
+	}
+
+	/* PRIVATE METHODS */
+
+	private static int toCapacity(final float weight) {
+
+		final int capacity = (int)weight;
+		if (capacity != weight)
+			throw new IllegalArgumentException("weight " + weight + " is not an integer");
+		return capacity;
+	}
+}
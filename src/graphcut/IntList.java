@@ -0,0 +1,63 @@
+package graphcut;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable list of primitive <tt>int</tt>s.
+ */
+public final class IntList {
+
+	private int[] elements;
+	private int size;
+
+	public IntList() {
+		this(16);
+	}
+
+	public IntList(final int capacity) {
+		elements = new int[Math.max(capacity, 1)];
+		size     = 0;
+	}
+
+	public void add(final int element) {
+
+		if (size == elements.length)
+			elements = Arrays.copyOf(elements, 2*elements.length);
+		elements[size++] = element;
+	}
+
+	public int get(final int index) {
+		return elements[index];
+	}
+
+	public int removeLast() {
+		return elements[--size];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Replace the contents of <tt>list</tt> with the elements of this list.
+	 */
+	public void copyTo(final List<Integer> list) {
+
+		list.clear();
+		for (int i = 0; i < size; i++)
+			list.add(elements[i]);
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+}
@@ -0,0 +1,114 @@
+package graphcut;
+
+import java.util.List;
+
+/**
+ * Common interface of the max-flow/min-cut implementations.
+ *
+ * All implementations compute the same segmentation: a node is in the
+ * foreground if and only if it can be reached from the source in the residual
+ * graph of a maximum flow, i.e., free nodes are assigned to the background.
+ */
+public interface MaxFlow {
+
+	/**
+	 * Set the affinity for one node to belong to the foreground (i.e., source)
+	 * or background (i.e., sink).
+	 *
+	 * @param node   The number of the node.
+	 * @param source The affinity of this node to the foreground (i.e., source)
+	 * @param sink   The affinity of this node to the background (i.e., sink)
+	 */
+	public void setTerminalWeights(int node, float source, float sink);
+
+	/**
+	 * Set the edge weight of an undirected edge between two nodes.
+	 *
+	 * @param node1   The first node.
+	 * @param node2   The second node.
+	 * @param weight  The weight (i.e., the cost) of the connecting edge.
+	 */
+	public void setEdgeWeight(int node1, int node2, float weight);
+
+	/**
+	 * Set the edge weight of a pair of directed edges between two nodes.
+	 *
+	 * @param node1      The first node.
+	 * @param node2      The second node.
+	 * @param weight1to2 The weight (i.e., the cost) of the directed edge from
+	 *                   node1 to node2.
+	 * @param weight2to1 The weight (i.e., the cost) of the directed edge from
+	 *                   node2 to node1.
+	 */
+	public void setEdgeWeight(int node1, int node2, float weight1to2, float weight2to1);
+
+	/**
+	 * Performs the actual max-flow/min-cut computation.
+	 *
+	 * @param reuseTrees   reuse the state of a previous call, if supported
+	 * @param changedNodes list of nodes that potentially changed their
+	 *                     segmentation compared to a previous call, can be set
+	 *                     to <tt>null</tt>
+	 * @return the value of the maximum flow
+	 */
+	public float computeMaximumFlow(boolean reuseTrees, List<Integer> changedNodes);
+
+	/**
+	 * Get the nodes that potentially changed their segmentation in the last
+	 * call of {@link #computeMaximumFlow(boolean, List)}, without boxing.
+	 *
+	 * @return the changed nodes, in no particular order
+	 */
+	public int[] getChangedNodes();
+
+	/**
+	 * Get the segmentation, i.e., the terminal node that is connected to the
+	 * specified node.
+	 *
+	 * The segmentation is canonical: among all minimum cuts, it is the one
+	 * with the smallest foreground. It does not depend on the order in which
+	 * flow was augmented, so for integral capacities all implementations
+	 * return the same segmentation in every run. With floating point
+	 * capacities, rounding may differ between implementations, but the same
+	 * sequence of calls on the same implementation gives the same result.
+	 *
+	 * @param node the node to check
+	 * @return Either <tt>Terminal.FOREGROUND</tt> or
+	 *         <tt>Terminal.BACKGROUND</tt>
+	 */
+	public GraphCut.Terminal getTerminal(int node);
+
+	/**
+	 * Mark a node as being changed since the previous computation.
+	 *
+	 * @param node The node that changed.
+	 */
+	public void markNode(int node);
+
+	/**
+	 * Remove all edges and terminal weights, such that the memory can be used
+	 * for a new graph with at most the same number of nodes and edges. The
+	 * segmentation is undefined until the next call of
+	 * {@link #computeMaximumFlow(boolean, List)}, which starts from scratch.
+	 *
+	 * Implementations that initialise their nodes lazily ({@link GraphCut},
+	 * {@link IntGraphCut}, {@link IncrementalBreadthFirstSearch}) do this in
+	 * constant time, the others in time linear in the number of nodes, which
+	 * they spend on every computation anyway.
+	 */
+	public void reset();
+
+	/**
+	 * Gets the number of nodes in this graph.
+	 *
+	 * @return The number of nodes
+	 */
+	public int getNumNodes();
+
+	/**
+	 * Gets the number of edges in this graph.
+	 *
+	 * @return The number of edges.
+	 */
+	public int getNumEdges();
+}
@@ -0,0 +1,78 @@
+package graphcut;
+
+/**
+ * Available max-flow implementations.
+ */
+public enum MaxFlowBackend {
+
+	BOYKOV_KOLMOGOROV,         // GraphCut
+	BOYKOV_KOLMOGOROV_INTEGER, // IntGraphCut
+	PUSH_RELABEL,              // PushRelabel
+	IBFS,                      // IncrementalBreadthFirstSearch
+	DECOMPOSED,                // DecomposedMaxFlow
+	AUTO;                      // choose per problem
+
+	/**
+	 * Minimal number of nodes for which {@link #AUTO} prefers an algorithm
+	 * with bounded running time over Boykov-Kolmogorov.
+	 */
+	public static final int LARGE_MIN_NODES = 1 << 20;
+
+	/**
+	 * Minimal number of edges per node for which {@link #AUTO} chooses
+	 * push-relabel instead of IBFS for large graphs.
+	 */
+	public static final float PUSH_RELABEL_MIN_DENSITY = 4f;
+
+	/**
+	 * Create a max-flow implementation for the given number of nodes and
+	 * edges.
+	 */
+	public MaxFlow create(final int numNodes, final int numEdges) {
+
+		return create(numNodes, numEdges, false);
+	}
+
+	/**
+	 * Create a max-flow implementation for the given number of nodes and
+	 * edges. If all capacities are known to be integral, {@link #AUTO} uses
+	 * {@link IntGraphCut} instead of {@link GraphCut}.
+	 */
+	public MaxFlow create(final int numNodes, final int numEdges, final boolean integerCapacities) {
+
+		MaxFlowBackend backend = resolve(numNodes, numEdges);
+		if (this == AUTO && backend == BOYKOV_KOLMOGOROV && integerCapacities)
+			backend = BOYKOV_KOLMOGOROV_INTEGER;
+
+		switch (backend) {
+		case BOYKOV_KOLMOGOROV_INTEGER:
+			return new IntGraphCut(numNodes, numEdges);
+		case PUSH_RELABEL:
+			return new PushRelabel(numNodes, numEdges);
+		case IBFS:
+			return new IncrementalBreadthFirstSearch(numNodes, numEdges);
+		case DECOMPOSED:
+			return new DecomposedMaxFlow(numNodes, numEdges);
+		default:
+			return new GraphCut(numNodes, numEdges);
+		}
+	}
+
+	/**
+	 * Resolve {@link #AUTO} to a concrete backend. Boykov-Kolmogorov is
+	 * usually fastest on small graphs. On large graphs, where its orphan
+	 * adoption is more likely to degrade, IBFS has a comparable speed on grids
+	 * and a bounded worst case, and push-relabel is used for graphs with many
+	 * edges per node.
+	 */
+	public MaxFlowBackend resolve(final int numNodes, final int numEdges) {
+
+		if (this != AUTO)
+			return this;
+		if (numNodes < LARGE_MIN_NODES)
+			return BOYKOV_KOLMOGOROV;
+		if (numEdges >= PUSH_RELABEL_MIN_DENSITY * numNodes)
+			return PUSH_RELABEL;
+		return IBFS;
+	}
+}
@@ -0,0 +1,194 @@
+package graphcut;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Randomized check of all {@link MaxFlowBackend}s against a plain
+ * Edmonds-Karp reference.
+ *
+ * Random graphs with integral capacities are solved from scratch and then
+ * updated a few times by adding terminal weights to some nodes, which are
+ * marked and solved again with <tt>reuseTrees</tt>. Finally, each instance is
+ * {@link MaxFlow#reset() reset} and reused for another random graph. After
+ * every computation, the value of the flow and the segmentation of every
+ * backend must equal the reference: the set of nodes reachable from the
+ * source in the residual graph, see {@link MaxFlow#getTerminal(int)}.
+ *
+ * Usage: <tt>MaxFlowCheck [numGraphs [seed]]</tt>. Exits with status 1 if any
+ * backend disagrees with the reference.
+ */
+public class MaxFlowCheck {
+
+	private static final int MAX_NODES   = 24;
+	private static final int MAX_WEIGHT  = 6;
+	private static final int NUM_UPDATES = 3;
+
+	private static final MaxFlowBackend[] BACKENDS = {
+		MaxFlowBackend.BOYKOV_KOLMOGOROV,
+		MaxFlowBackend.BOYKOV_KOLMOGOROV_INTEGER,
+		MaxFlowBackend.PUSH_RELABEL,
+		MaxFlowBackend.IBFS,
+		MaxFlowBackend.DECOMPOSED
+	};
+
+	public static void main(final String[] args) {
+
+		final int  numGraphs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		final long seed      = args.length > 1 ? Long.parseLong(args[1]) : 0;
+
+		final Random random = new Random(seed);
+		int numFailures = 0;
+		for (int g = 0; g < numGraphs; g++)
+			for (final MaxFlowBackend backend : BACKENDS)
+				if (!check(backend, random.nextLong())) {
+					System.out.println("mismatch: " + backend + ", graph " + g);
+					numFailures++;
+				}
+
+		System.out.println(numGraphs + " graphs, " + BACKENDS.length + " backends, " + numFailures + " mismatches");
+		if (numFailures > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Solve one random graph and its updates with <tt>backend</tt> and the
+	 * reference.
+	 *
+	 * @return whether all computations agree
+	 */
+	static boolean check(final MaxFlowBackend backend, final long seed) {
+
+		final Random random   = new Random(seed);
+		final int    numNodes = 1 + random.nextInt(MAX_NODES);
+		final int    numEdges = random.nextInt(3*numNodes + 1);
+
+		// reference capacities, source is numNodes, sink numNodes + 1
+		final int     s          = numNodes;
+		final int     t          = numNodes + 1;
+		final int[][] capacities = new int[numNodes + 2][numNodes + 2];
+
+		final MaxFlow maxFlow = backend.create(numNodes, numEdges);
+		fill(maxFlow, capacities, numEdges, random);
+
+		if (!agrees(maxFlow, maxFlow.computeMaximumFlow(false, null), capacities, s, t))
+			return false;
+
+		for (int u = 0; u < NUM_UPDATES; u++) {
+			final int numChanged = 1 + random.nextInt(numNodes);
+			for (int c = 0; c < numChanged; c++) {
+				final int node   = random.nextInt(numNodes);
+				final int source = random.nextInt(MAX_WEIGHT);
+				final int sink   = random.nextInt(MAX_WEIGHT);
+				maxFlow.setTerminalWeights(node, source, sink);
+				maxFlow.markNode(node);
+				capacities[s][node] += source;
+				capacities[node][t] += sink;
+			}
+			if (!agrees(maxFlow, maxFlow.computeMaximumFlow(true, null), capacities, s, t))
+				return false;
+		}
+
+		// reuse the memory for another random graph
+		maxFlow.reset();
+		for (final int[] row : capacities)
+			Arrays.fill(row, 0);
+		fill(maxFlow, capacities, random.nextInt(numEdges + 1), random);
+
+		return agrees(maxFlow, maxFlow.computeMaximumFlow(false, null), capacities, s, t);
+	}
+
+	/* PRIVATE METHODS */
+
+	/**
+	 * Set random terminal weights for all nodes and add up to
+	 * <tt>numEdges</tt> random edges, to <tt>maxFlow</tt> and to the
+	 * reference capacities.
+	 */
+	private static void fill(final MaxFlow maxFlow, final int[][] capacities, final int numEdges, final Random random) {
+
+		final int numNodes = maxFlow.getNumNodes();
+		final int s        = numNodes;
+		final int t        = numNodes + 1;
+
+		for (int i = 0; i < numNodes; i++) {
+			final int source = random.nextInt(MAX_WEIGHT);
+			final int sink   = random.nextInt(MAX_WEIGHT);
+			maxFlow.setTerminalWeights(i, source, sink);
+			capacities[s][i] += source;
+			capacities[i][t] += sink;
+		}
+		for (int e = 0; e < numEdges; e++) {
+			final int node1 = random.nextInt(numNodes);
+			final int node2 = random.nextInt(numNodes);
+			if (node1 == node2)
+				continue;
+			final int weight1to2 = random.nextInt(MAX_WEIGHT);
+			final int weight2to1 = random.nextInt(MAX_WEIGHT);
+			maxFlow.setEdgeWeight(node1, node2, weight1to2, weight2to1);
+			capacities[node1][node2] += weight1to2;
+			capacities[node2][node1] += weight2to1;
+		}
+	}
+
+	private static boolean agrees(final MaxFlow maxFlow, final float flow, final int[][] capacities, final int s, final int t) {
+
+		final boolean[] reachable = new boolean[capacities.length];
+		final int referenceFlow = edmondsKarp(capacities, s, t, reachable);
+
+		if (flow != referenceFlow)
+			return false;
+		for (int i = 0; i < maxFlow.getNumNodes(); i++)
+			if ((maxFlow.getTerminal(i) == GraphCut.Terminal.FOREGROUND) != reachable[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Compute the maximum flow from <tt>s</tt> to <tt>t</tt>.
+	 *
+	 * @param reachable receives the nodes that are reachable from <tt>s</tt>
+	 *                  in the residual graph of the maximum flow
+	 * @return the value of the maximum flow
+	 */
+	private static int edmondsKarp(final int[][] capacities, final int s, final int t, final boolean[] reachable) {
+
+		final int     n        = capacities.length;
+		final int[][] residual = new int[n][];
+		for (int i = 0; i < n; i++)
+			residual[i] = capacities[i].clone();
+
+		final int[] parents = new int[n];
+		int flow = 0;
+		while (true) {
+
+			// breadth-first search for a shortest augmenting path
+			Arrays.fill(parents, -1);
+			Arrays.fill(reachable, false);
+			final ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+			queue.add(s);
+			reachable[s] = true;
+			while (!queue.isEmpty()) {
+				final int i = queue.remove();
+				for (int j = 0; j < n; j++)
+					if (!reachable[j] && residual[i][j] > 0) {
+						reachable[j] = true;
+						parents[j]   = i;
+						queue.add(j);
+					}
+			}
+			if (!reachable[t])
+				return flow;
+
+			int bottleneck = Integer.MAX_VALUE;
+			for (int j = t; j != s; j = parents[j])
+				bottleneck = Math.min(bottleneck, residual[parents[j]][j]);
+			for (int j = t; j != s; j = parents[j]) {
+				residual[parents[j]][j] -= bottleneck;
+				residual[j][parents[j]] += bottleneck;
+			}
+			flow += bottleneck;
+		}
+	}
+}
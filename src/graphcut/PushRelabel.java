@@ -0,0 +1,452 @@
+package graphcut;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Highest-label push-relabel max-flow with global relabeling and gap
+ * heuristics.
+ *
+ * Unlike {@link GraphCut}, the running time is polynomially bounded, which
+ * makes this implementation more robust on large, noisy instances where the
+ * orphan adoption of Boykov-Kolmogorov degrades.
+ *
+ * Only the first phase of push-relabel (computing a maximum preflow) is
+ * performed. It is run on the reversed network (source and sink swapped, all
+ * edges reversed), so that the nodes that can reach the sink of the reversed
+ * network are exactly the nodes reachable from the source in the original
+ * one. This gives the same segmentation as {@link GraphCut}.
+ */
+public class PushRelabel implements MaxFlow {
+
+	private final int numNodes;
+	private final int numEdges;
+
+	// label that marks nodes as unable to reach the sink
+	private final int infinity;
+
+	// counter for initialisation of edges
+	private int edgeNum;
+
+	// the flow that is known from setting the terminal weights
+	private float terminalFlow;
+
+	///////////
+	// graph //
+	///////////
+
+	// the residual capacity of each node to the sink (<0) or from the source
+	// (>0), as set by setTerminalWeights
+	private final float[] terminalCapacities;
+
+	// first outgoing edge of each node
+	private final int[] firstOutgoings;
+
+	// edges are allocated in pairs, the sister of edge e is e^1
+	private final int[] heads;
+	private final int[] nextEdges;
+	private final float[] edgeCapacities;
+
+	////////////////////////////////////////
+	// state of the (reversed) computation //
+	////////////////////////////////////////
+
+	private final float[] residualEdgeCapacities;
+
+	// residual capacity of each node to the sink of the reversed network
+	private final float[] sinkCapacities;
+
+	private final float[] excess;
+
+	private final int[] labels;
+
+	// current edge of each node
+	private final int[] currentEdges;
+
+	// per label, a stack of active nodes...
+	private final int[] activeFirst;
+	private final int[] activeNext;
+
+	// ...and a doubly linked list of all nodes
+	private final int[] bucketFirst;
+	private final int[] bucketNext;
+	private final int[] bucketPrev;
+
+	private int maxActive;
+	private int maxLabel;
+
+	private int relabelsSinceUpdate;
+
+	// breadth-first search queue for global relabeling
+	private final int[] queue;
+
+	// the segmentation of the last computation
+	private final boolean[] foreground;
+
+	// nodes that changed their segmentation in the last computation
+	private final IntList changedList;
+
+	private int maxflowIteration;
+
+	/**
+	 * Allocates the memory needed for the given number of nodes and edges.
+	 *
+	 * @param numNodes The number of nodes that should be created.
+	 * @param numEdges The number of edges that you can add. A directed edge and its
+	 *                 counterpart (i.e., the directed edge in the other
+	 *                 direction) count as one edge.
+	 */
+	public PushRelabel(final int numNodes, final int numEdges) {
+
+		this.numNodes = numNodes;
+		this.numEdges = numEdges;
+		infinity      = numNodes + 1;
+
+		terminalCapacities     = new float[numNodes];
+		firstOutgoings         = new int[numNodes];
+		heads                  = new int[2*numEdges];
+		nextEdges              = new int[2*numEdges];
+		edgeCapacities         = new float[2*numEdges];
+		residualEdgeCapacities = new float[2*numEdges];
+		sinkCapacities         = new float[numNodes];
+		excess                 = new float[numNodes];
+		labels                 = new int[numNodes];
+		currentEdges           = new int[numNodes];
+		activeFirst            = new int[infinity + 1];
+		activeNext             = new int[numNodes];
+		bucketFirst            = new int[infinity + 1];
+		bucketNext             = new int[numNodes];
+		bucketPrev             = new int[numNodes];
+		queue                  = new int[numNodes];
+		foreground             = new boolean[numNodes];
+		changedList            = new IntList();
+
+		for (int i = 0; i < numNodes; i++)
+			firstOutgoings[i] = Graph.NONE;
+	}
+
+	@Override
+	public void setTerminalWeights(final int node, float source, float sink) {
+
+		final float delta = terminalCapacities[node];
+
+		if (delta > 0)
+			source += delta;
+		else
+			sink   -= delta;
+
+		terminalFlow += (source < sink) ? source : sink;
+
+		terminalCapacities[node] = source - sink;
+	}
+
+	@Override
+	public void setEdgeWeight(final int node1, final int node2, final float weight) {
+
+		setEdgeWeight(node1, node2, weight, weight);
+	}
+
+	@Override
+	public void setEdgeWeight(final int node1, final int node2, final float weight1to2, final float weight2to1) {
+
+		final int edge        = 2*edgeNum;
+		final int reverseEdge = edge + 1;
+		edgeNum++;
+
+		heads[edge]               = node2;
+		nextEdges[edge]           = firstOutgoings[node1];
+		firstOutgoings[node1]     = edge;
+		edgeCapacities[edge]      = weight1to2;
+
+		heads[reverseEdge]           = node1;
+		nextEdges[reverseEdge]       = firstOutgoings[node2];
+		firstOutgoings[node2]        = reverseEdge;
+		edgeCapacities[reverseEdge]  = weight2to1;
+	}
+
+	/**
+	 * Performs the max-flow/min-cut computation. The computation always starts
+	 * from scratch, <tt>reuseTrees</tt> is ignored.
+	 *
+	 * @param reuseTrees   ignored
+	 * @param changedNodes list of nodes that changed their segmentation
+	 *                     compared to the previous call (all nodes on the
+	 *                     first call), can be set to <tt>null</tt>
+	 */
+	@Override
+	public float computeMaximumFlow(final boolean reuseTrees, final List<Integer> changedNodes) {
+
+		float flow = terminalFlow;
+
+		// reversed network: the sink capacities become the source capacities
+		// and every edge gets the capacity of its sister
+		for (int node = 0; node < numNodes; node++) {
+			final float capacity = terminalCapacities[node];
+			excess[node]         = capacity < 0 ? -capacity : 0;
+			sinkCapacities[node] = capacity > 0 ?  capacity : 0;
+		}
+		for (int edge = 0; edge < 2*edgeNum; edge++)
+			residualEdgeCapacities[edge] = edgeCapacities[edge ^ 1];
+
+		globalRelabel();
+
+		while (true) {
+
+			// find the active node with the highest label
+			while (maxActive > 0 && activeFirst[maxActive] == Graph.NONE)
+				maxActive--;
+			if (maxActive == 0)
+				break;
+
+			final int node = activeFirst[maxActive];
+			activeFirst[maxActive] = activeNext[node];
+
+			flow += discharge(node);
+
+			if (relabelsSinceUpdate > numNodes) {
+				globalRelabel();
+			}
+		}
+
+		// nodes that reach the sink of the reversed network are reachable
+		// from the source of the original one
+		globalRelabel();
+
+		changedList.clear();
+		for (int node = 0; node < numNodes; node++) {
+			final boolean isForeground = labels[node] < infinity;
+			if (maxflowIteration == 0 || isForeground != foreground[node])
+				changedList.add(node);
+			foreground[node] = isForeground;
+		}
+		if (changedNodes != null)
+			changedList.copyTo(changedNodes);
+
+		maxflowIteration++;
+
+		return flow;
+	}
+
+	@Override
+	public int[] getChangedNodes() {
+		return changedList.toArray();
+	}
+
+	/**
+	 * Remove all edges and terminal weights, in time linear in the number of
+	 * nodes. The segmentation is undefined until the next call of
+	 * {@link #computeMaximumFlow(boolean, List)}.
+	 */
+	@Override
+	public void reset() {
+
+		Arrays.fill(terminalCapacities, 0);
+		Arrays.fill(firstOutgoings, Graph.NONE);
+		edgeNum          = 0;
+		terminalFlow     = 0;
+		maxflowIteration = 0;
+	}
+
+	@Override
+	public GraphCut.Terminal getTerminal(final int node) {
+
+		return foreground[node] ? GraphCut.Terminal.FOREGROUND : GraphCut.Terminal.BACKGROUND;
+	}
+
+	/**
+	 * Does nothing, every computation starts from scratch.
+	 */
+	@Override
+	public void markNode(final int node) {
+	}
+
+	@Override
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	@Override
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Push excess of an active node until it is not active anymore.
+	 *
+	 * @return flow that arrived at the sink
+	 */
+	private float discharge(final int node) {
+
+		float flow = 0;
+
+		while (true) {
+
+			final int label = labels[node];
+
+			// push to the sink
+			if (label == 1 && sinkCapacities[node] > 0) {
+				final float delta = excess[node] < sinkCapacities[node] ? excess[node] : sinkCapacities[node];
+				sinkCapacities[node] -= delta;
+				excess[node]         -= delta;
+				flow                 += delta;
+				if (excess[node] == 0)
+					return flow;
+			}
+
+			// push to neighbors
+			for (int edge = currentEdges[node]; edge != Graph.NONE; edge = nextEdges[edge]) {
+
+				if (residualEdgeCapacities[edge] > 0) {
+
+					final int head = heads[edge];
+					if (labels[head] == label - 1) {
+
+						final float delta = excess[node] < residualEdgeCapacities[edge] ? excess[node] : residualEdgeCapacities[edge];
+						residualEdgeCapacities[edge]     -= delta;
+						residualEdgeCapacities[edge ^ 1] += delta;
+						if (excess[head] == 0)
+							setActive(head);
+						excess[head] += delta;
+						excess[node] -= delta;
+
+						if (excess[node] == 0) {
+							currentEdges[node] = edge;
+							return flow;
+						}
+					}
+				}
+			}
+
+			// no admissible edge left
+			relabel(node);
+			if (labels[node] >= infinity)
+				return flow;
+		}
+	}
+
+	/**
+	 * Relabel a node, applying the gap heuristic if its old label becomes
+	 * empty.
+	 */
+	private void relabel(final int node) {
+
+		relabelsSinceUpdate++;
+
+		final int oldLabel = labels[node];
+		removeFromBucket(node);
+
+		if (bucketFirst[oldLabel] == Graph.NONE) {
+			// gap: no node above oldLabel can reach the sink anymore
+			for (int label = oldLabel + 1; label <= maxLabel; label++) {
+				for (int other = bucketFirst[label]; other != Graph.NONE; other = bucketNext[other])
+					labels[other] = infinity;
+				bucketFirst[label] = Graph.NONE;
+				activeFirst[label] = Graph.NONE;
+			}
+			maxLabel     = oldLabel - 1;
+			maxActive    = Math.min(maxActive, maxLabel);
+			labels[node] = infinity;
+			return;
+		}
+
+		int newLabel = infinity;
+		if (sinkCapacities[node] > 0)
+			newLabel = 1;
+		for (int edge = firstOutgoings[node]; edge != Graph.NONE; edge = nextEdges[edge])
+			if (residualEdgeCapacities[edge] > 0 && labels[heads[edge]] + 1 < newLabel)
+				newLabel = labels[heads[edge]] + 1;
+
+		labels[node]       = newLabel;
+		currentEdges[node] = firstOutgoings[node];
+		if (newLabel < infinity) {
+			addToBucket(node);
+			if (newLabel > maxLabel)
+				maxLabel = newLabel;
+		}
+	}
+
+	/**
+	 * Compute exact distances to the sink by a backwards breadth-first search
+	 * and rebuild all buckets.
+	 */
+	private void globalRelabel() {
+
+		relabelsSinceUpdate = 0;
+
+		for (int label = 0; label <= infinity; label++) {
+			activeFirst[label] = Graph.NONE;
+			bucketFirst[label] = Graph.NONE;
+		}
+		maxActive = 0;
+		maxLabel  = 0;
+
+		int queueEnd = 0;
+		for (int node = 0; node < numNodes; node++) {
+			if (sinkCapacities[node] > 0) {
+				labels[node]      = 1;
+				queue[queueEnd++] = node;
+			} else
+				labels[node] = infinity;
+		}
+
+		for (int queueStart = 0; queueStart < queueEnd; queueStart++) {
+
+			final int node  = queue[queueStart];
+			final int label = labels[node] + 1;
+
+			for (int edge = firstOutgoings[node]; edge != Graph.NONE; edge = nextEdges[edge]) {
+				final int head = heads[edge];
+				// can head push to node?
+				if (labels[head] == infinity && residualEdgeCapacities[edge ^ 1] > 0) {
+					labels[head]      = label;
+					queue[queueEnd++] = head;
+				}
+			}
+		}
+
+		for (int i = 0; i < queueEnd; i++) {
+			final int node = queue[i];
+			currentEdges[node] = firstOutgoings[node];
+			addToBucket(node);
+			if (labels[node] > maxLabel)
+				maxLabel = labels[node];
+			if (excess[node] > 0)
+				setActive(node);
+		}
+	}
+
+	private void setActive(final int node) {
+
+		final int label = labels[node];
+		if (label >= infinity)
+			return;
+		activeNext[node]   = activeFirst[label];
+		activeFirst[label] = node;
+		if (label > maxActive)
+			maxActive = label;
+	}
+
+	private void addToBucket(final int node) {
+
+		final int label = labels[node];
+		bucketPrev[node] = Graph.NONE;
+		bucketNext[node] = bucketFirst[label];
+		if (bucketFirst[label] != Graph.NONE)
+			bucketPrev[bucketFirst[label]] = node;
+		bucketFirst[label] = node;
+	}
+
+	private void removeFromBucket(final int node) {
+
+		if (bucketPrev[node] != Graph.NONE)
+			bucketNext[bucketPrev[node]] = bucketNext[node];
+		else
+			bucketFirst[labels[node]] = bucketNext[node];
+		if (bucketNext[node] != Graph.NONE)
+			bucketPrev[bucketNext[node]] = bucketPrev[node];
+	}
+}